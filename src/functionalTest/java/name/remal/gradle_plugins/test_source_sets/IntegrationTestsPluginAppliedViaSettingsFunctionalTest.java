@@ -1,5 +1,7 @@
 package name.remal.gradle_plugins.test_source_sets;
 
+import static java.lang.String.join;
+
 import lombok.RequiredArgsConstructor;
 import name.remal.gradle_plugins.toolkit.testkit.functional.GradleProject;
 import org.junit.jupiter.api.Test;
@@ -24,4 +26,27 @@ class IntegrationTestsPluginAppliedViaSettingsFunctionalTest {
         project.assertBuildSuccessfully("help");
     }
 
+    @Test
+    void testSourceSetTemplateWithTheSameName() {
+        project.forSettingsFile(settings -> {
+            settings.applyPlugin("name.remal.test-source-sets");
+            settings.applyPlugin("name.remal.integration-tests");
+            settings.line(join("\n", new String[]{
+                "testSourceSetTemplates {",
+                "    template('integrationTest') {",
+                "        testTask { maxParallelForks = 2 }",
+                "    }",
+                "}",
+            }));
+        });
+
+        project.getBuildFile().line(join("\n", new String[]{
+            "afterEvaluate {",
+            "    assert tasks.named('integrationTest', Test).get().maxParallelForks == 2",
+            "}",
+        }));
+
+        project.assertBuildSuccessfully("help");
+    }
+
 }
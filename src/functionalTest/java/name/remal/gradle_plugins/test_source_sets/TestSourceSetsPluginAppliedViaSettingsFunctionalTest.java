@@ -1,6 +1,11 @@
 package name.remal.gradle_plugins.test_source_sets;
 
+import static java.lang.String.join;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
 import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
 import name.remal.gradle_plugins.toolkit.testkit.functional.GradleProject;
 import org.junit.jupiter.api.Test;
 
@@ -24,4 +29,52 @@ class TestSourceSetsPluginAppliedViaSettingsFunctionalTest {
         project.assertBuildSuccessfully("help");
     }
 
+    @Test
+    void testSourceSetTemplatesAreAppliedToProject() {
+        project.forSettingsFile(settings -> {
+            settings.applyPlugin("name.remal.test-source-sets");
+            settings.line(join("\n", new String[]{
+                "testSourceSetTemplates {",
+                "    template('integrationTest') {",
+                "        testTask { maxParallelForks = 2 }",
+                "    }",
+                "    template('perfTest')",
+                "}",
+            }));
+        });
+
+        project.getBuildFile().line(join("\n", new String[]{
+            "assert testSourceSets.getByName('integrationTest') != null",
+            "assert testSourceSets.getByName('perfTest') != null",
+            "assert tasks.named('integrationTest', Test).get().maxParallelForks == 2",
+            "dependencies { perfTestImplementation files('perf.jar') }",
+        }));
+
+        project.assertBuildSuccessfully("help");
+    }
+
+    @Test
+    void allProjectsTestsTask() {
+        project.putGradleProperty("name.remal.test-source-sets.all-projects-test-tasks-order", "LONGEST_FIRST");
+        project.putGradleProperty("name.remal.test-source-sets.max-parallel-test-tasks", "2");
+        project.forSettingsFile(settings -> {
+            settings.applyPlugin("name.remal.test-source-sets");
+            settings.line("include 'first', 'second'");
+            settings.line(join("\n", new String[]{
+                "testSourceSetTemplates {",
+                "    template('integrationTest')",
+                "}",
+            }));
+        });
+        createDirectories(project.getProjectDir().toPath().resolve("first"));
+        createDirectories(project.getProjectDir().toPath().resolve("second"));
+
+        project.assertBuildSuccessfully("allProjectsTests");
+    }
+
+    @SneakyThrows
+    private static void createDirectories(Path path) {
+        Files.createDirectories(path);
+    }
+
 }
@@ -24,7 +24,7 @@ class TestSourceSetsPluginFunctionalTest {
     void beforeEach() {
         project.forBuildFile(build -> {
             build.applyPlugin("name.remal.test-source-sets");
-            build.line("testSourceSets { additionalTest }");
+            build.line("testSourceSets { additionalTest() }");
 
             addMavenCentralRepository(build);
 
@@ -110,6 +110,60 @@ class TestSourceSetsPluginFunctionalTest {
         project.assertBuildSuccessfully("jacocoAdditionalTestReport");
     }
 
+    @Test
+    void buildWithJacocoOfflineInstrumentationPerformsSuccessfully() {
+        project.forBuildFile(build -> {
+            build.applyPlugin("jacoco");
+            build.line("testSourceSets { jacocoOfflineInstrumentation = true }");
+
+            build.line(join("\n", new String[]{
+                "file(\"src/main/java/pkg/Covered.java\").with {",
+                "    parentFile.mkdirs()",
+                "    write([",
+                "        'package pkg;',",
+                "        'public class Covered {',",
+                "        '    public static int value() { return 1; }',",
+                "        '}',",
+                "    ].join('\\n'), 'UTF-8')",
+                "}",
+                "",
+                "file(\"src/additionalTest/java/pkg/CoveredTest.java\").with {",
+                "    parentFile.mkdirs()",
+                "    write([",
+                "        'package pkg;',",
+                "        'import org.junit.jupiter.api.Test;',",
+                "        'public class CoveredTest {',",
+                "        '    @Test',",
+                "        '    public void test() { assert Covered.value() == 1; }',",
+                "        '}',",
+                "    ].join('\\n'), 'UTF-8')",
+                "}",
+                "",
+                "// Execution data of a previous execution, which must be deleted before the tests are executed",
+                "file(\"build/jacoco/additionalTest.exec\").with {",
+                "    parentFile.mkdirs()",
+                "    write('stale', 'UTF-8')",
+                "}",
+                "",
+                "jacocoAdditionalTestCoverageVerification {",
+                "    violationRules {",
+                "        rule {",
+                "            element = 'CLASS'",
+                "            includes = ['pkg.Covered']",
+                "            limit {",
+                "                counter = 'LINE'",
+                "                minimum = 1.0",
+                "            }",
+                "        }",
+                "    }",
+                "}",
+                ""
+            }));
+        });
+
+        project.assertBuildSuccessfully("additionalTest", "jacocoAdditionalTestCoverageVerification");
+    }
+
     @Test
     @MinTestableGradleVersion("7.2")
     void kotlinBuildWithInternalVisibilityPerformsSuccessfully() {
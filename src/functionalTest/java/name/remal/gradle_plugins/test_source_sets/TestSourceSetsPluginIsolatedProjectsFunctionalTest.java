@@ -0,0 +1,90 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.lang.String.join;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.writeString;
+
+import java.io.File;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import name.remal.gradle_plugins.toolkit.testkit.MinTestableGradleVersion;
+import name.remal.gradle_plugins.toolkit.testkit.functional.GradleProject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@RequiredArgsConstructor
+@MinTestableGradleVersion("8.8")
+class TestSourceSetsPluginIsolatedProjectsFunctionalTest {
+
+    final GradleProject project;
+
+    @BeforeEach
+    void beforeEach() {
+        project.putGradleProperty("org.gradle.unsafe.isolated-projects", "true");
+        project.putGradleProperty("org.gradle.parallel", "true");
+        project.forSettingsFile(settings -> settings.line("include 'first', 'second', 'third'"));
+    }
+
+    @Test
+    void testSourceSetsPluginAppliedToEachProject() {
+        for (var childProjectName : new String[]{"first", "second", "third"}) {
+            writeChildBuildFile(childProjectName, join("\n", new String[]{
+                "plugins {",
+                "    id 'name.remal.test-source-sets'",
+                "    id 'jacoco'",
+                "    id 'idea'",
+                "    id 'eclipse'",
+                "}",
+                "",
+                "testSourceSets {",
+                "    integrationTest()",
+                "    functionalTest()",
+                "}",
+                "",
+            }));
+        }
+
+        project.assertBuildSuccessfully("allTests", "jacocoAllTestsReport");
+    }
+
+    @Test
+    void integrationTestsPluginAppliedToEachProject() {
+        for (var childProjectName : new String[]{"first", "second", "third"}) {
+            writeChildBuildFile(childProjectName, join("\n", new String[]{
+                "plugins {",
+                "    id 'name.remal.integration-tests'",
+                "}",
+                "",
+            }));
+        }
+
+        project.assertBuildSuccessfully("allTests");
+    }
+
+    @Test
+    void profilingOfParallelConfiguration() {
+        project.putGradleProperty("name.remal.test-source-sets.profile", "true");
+        for (var childProjectName : new String[]{"first", "second", "third"}) {
+            writeChildBuildFile(childProjectName, join("\n", new String[]{
+                "plugins {",
+                "    id 'name.remal.test-source-sets'",
+                "}",
+                "",
+                "testSourceSets {",
+                "    integrationTest()",
+                "}",
+                "",
+            }));
+        }
+
+        project.assertBuildSuccessfully("allTests");
+    }
+
+    @SneakyThrows
+    private void writeChildBuildFile(String childProjectName, String content) {
+        var childProjectDir = new File(project.getProjectDir(), childProjectName).toPath();
+        createDirectories(childProjectDir);
+        writeString(childProjectDir.resolve("build.gradle"), content);
+    }
+
+}
@@ -0,0 +1,68 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static name.remal.gradle_plugins.toolkit.testkit.ProjectValidations.executeAfterEvaluateActions;
+
+import java.util.concurrent.TimeUnit;
+import org.gradle.plugins.ide.eclipse.model.EclipseClasspath;
+import org.gradle.plugins.ide.eclipse.model.EclipseModel;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to get test source sets and test configurations of the Eclipse model
+ * for growing number of test source sets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EclipseModelBenchmark {
+
+    @Param({"10", "100", "300", "1000"})
+    public int testSourceSetsCount;
+
+    private EclipseClasspath eclipseClasspath;
+
+    @Setup
+    public void setup() {
+        var project = ProjectBuilder.builder().build();
+        project.getPluginManager().apply(TestSourceSetsPlugin.class);
+        project.getPluginManager().apply("eclipse");
+
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        for (int i = 0; i < testSourceSetsCount; ++i) {
+            testSourceSets.create("source" + i + "Test");
+        }
+
+        executeAfterEvaluateActions(project);
+
+        eclipseClasspath = getExtension(project, EclipseModel.class).getClasspath();
+    }
+
+
+    @Benchmark
+    @SuppressWarnings("UnstableApiUsage")
+    public int testSourceSets() {
+        return eclipseClasspath.getTestSourceSets().get().size();
+    }
+
+    @Benchmark
+    @SuppressWarnings("UnstableApiUsage")
+    public int testConfigurations() {
+        return eclipseClasspath.getTestConfigurations().get().size();
+    }
+
+}
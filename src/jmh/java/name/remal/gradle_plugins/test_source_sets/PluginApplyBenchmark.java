@@ -0,0 +1,125 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static name.remal.gradle_plugins.toolkit.testkit.ProjectValidations.executeAfterEvaluateActions;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to apply the plugin and configure a project with growing number of test source sets,
+ * with and without plugins the plugin integrates with.
+ *
+ * <p>Run with {@code -prof gc} (the default for {@code jmh} task) to get allocation rate.
+ * {@link #retainedHeap(RetainedHeap)} reports heap retained by the configured project.
+ *
+ * <p>Use {@code jmhBaseline} task to store the results as a baseline, and {@code jmhCompare} task to compare
+ * the results with it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PluginApplyBenchmark {
+
+    private static final List<String> ALL_INTEGRATED_PLUGINS = List.of(
+        "jacoco",
+        "idea",
+        "eclipse",
+        "kotlin",
+        "java-gradle-plugin"
+    );
+
+
+    @Param({"1", "10", "100", "1000"})
+    public int testSourceSetsCount;
+
+    @Param({"none", "jacoco", "idea", "eclipse", "kotlin", "java-gradle-plugin", "all"})
+    public String integratedPlugins;
+
+    private List<String> pluginIds;
+
+    @Setup
+    public void setup() {
+        if (integratedPlugins.equals("none")) {
+            pluginIds = List.of();
+        } else if (integratedPlugins.equals("all")) {
+            pluginIds = ALL_INTEGRATED_PLUGINS;
+        } else {
+            pluginIds = List.of(integratedPlugins);
+        }
+    }
+
+
+    @Benchmark
+    public Project apply() {
+        return createConfiguredProject();
+    }
+
+    @Benchmark
+    public Project retainedHeap(RetainedHeap retainedHeap) {
+        var usedHeapBefore = getUsedHeapAfterGc();
+        var project = createConfiguredProject();
+        retainedHeap.retainedHeapBytes += getUsedHeapAfterGc() - usedHeapBefore;
+        return project;
+    }
+
+    private Project createConfiguredProject() {
+        var project = ProjectBuilder.builder().build();
+        pluginIds.forEach(project.getPluginManager()::apply);
+        project.getPluginManager().apply(TestSourceSetsPlugin.class);
+
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        for (int i = 0; i < testSourceSetsCount; ++i) {
+            testSourceSets.create("source" + i + "Test");
+        }
+
+        executeAfterEvaluateActions(project);
+        return project;
+    }
+
+    private static long getUsedHeapAfterGc() {
+        var memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; ++i) {
+            memory.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+
+    /**
+     * JMH doesn't reset counters, so they are reset before every iteration,
+     * otherwise every iteration would report heap retained by all previous iterations.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RetainedHeap {
+
+        public long retainedHeapBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            retainedHeapBytes = 0;
+        }
+
+    }
+
+}
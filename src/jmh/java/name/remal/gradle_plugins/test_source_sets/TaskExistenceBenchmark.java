@@ -0,0 +1,67 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static name.remal.gradle_plugins.test_source_sets.TaskRegistrationUtils.isTaskRegistered;
+
+import java.util.concurrent.TimeUnit;
+import org.gradle.api.tasks.TaskContainer;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link TaskRegistrationUtils#isTaskRegistered(TaskContainer, String)}
+ * with {@code tasks.getNames().contains(name)} for growing number of registered tasks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskExistenceBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    public int tasksCount;
+
+    private TaskContainer tasks;
+
+    @Setup
+    public void setup() {
+        var project = ProjectBuilder.builder().build();
+        tasks = project.getTasks();
+        for (int i = 0; i < tasksCount; ++i) {
+            tasks.register("task" + i);
+        }
+    }
+
+
+    @Benchmark
+    public boolean isTaskRegisteredForExistingTask() {
+        return isTaskRegistered(tasks, "task0");
+    }
+
+    @Benchmark
+    public boolean isTaskRegisteredForMissingTask() {
+        return isTaskRegistered(tasks, "missingTask");
+    }
+
+    @Benchmark
+    public boolean getNamesContainsForExistingTask() {
+        return tasks.getNames().contains("task0");
+    }
+
+    @Benchmark
+    public boolean getNamesContainsForMissingTask() {
+        return tasks.getNames().contains("missingTask");
+    }
+
+}
@@ -0,0 +1,84 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static name.remal.gradle_plugins.toolkit.ProxyUtils.toDynamicInterface;
+
+import java.util.concurrent.TimeUnit;
+import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.jspecify.annotations.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares dispatch cost of {@link DefaultTestSourceSetContainer}
+ * with a dynamic proxy of {@link TestSourceSetContainer}, both delegating to the same container.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TestSourceSetContainerDispatchBenchmark {
+
+    private TestSourceSetContainer defaultContainer;
+
+    private TestSourceSetContainer proxyContainer;
+
+    @Setup
+    public void setup() {
+        var project = ProjectBuilder.builder().build();
+        project.getPluginManager().apply(JavaPlugin.class);
+        var sourceSets = getExtension(project, SourceSetContainer.class);
+        var delegate = project.getObjects().domainObjectContainer(SourceSet.class, sourceSets::create);
+        for (int i = 0; i < 100; ++i) {
+            delegate.create("source" + i + "Test");
+        }
+
+        defaultContainer = project.getObjects().newInstance(DefaultTestSourceSetContainer.class, delegate);
+        proxyContainer = toDynamicInterface(delegate, TestSourceSetContainer.class, invocationHandler -> { });
+    }
+
+
+    @Benchmark
+    public SourceSet defaultGetByName() {
+        return defaultContainer.getByName("source50Test");
+    }
+
+    @Benchmark
+    public SourceSet proxyGetByName() {
+        return proxyContainer.getByName("source50Test");
+    }
+
+    @Benchmark
+    public @Nullable SourceSet defaultFindByNameMissing() {
+        return defaultContainer.findByName("missingTest");
+    }
+
+    @Benchmark
+    public @Nullable SourceSet proxyFindByNameMissing() {
+        return proxyContainer.findByName("missingTest");
+    }
+
+    @Benchmark
+    public int defaultSize() {
+        return defaultContainer.size();
+    }
+
+    @Benchmark
+    public int proxySize() {
+        return proxyContainer.size();
+    }
+
+}
@@ -0,0 +1,106 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.write;
+import static name.remal.gradle_plugins.test_source_sets.AffectedTestsAnalyzer.index;
+import static name.remal.gradle_plugins.test_source_sets.AffectedTestsAnalyzer.selectAffectedTests;
+
+import java.io.File;
+import java.util.List;
+import lombok.SneakyThrows;
+import name.remal.gradle_plugins.test_source_sets.AffectedTestsAnalyzer.State;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.SetProperty;
+import org.gradle.api.specs.Specs;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.IgnoreEmptyDirectories;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Selects test classes affected by changes of the classpath since the last successful run of each test task.
+ *
+ * <p>Every test task has its own baseline and selection file, see {@link #getTestTaskFileName(String)}.
+ * A selection file contains names of the affected test classes,
+ * or {@link #ALL_TESTS} if all test classes should be executed.
+ *
+ * <p>Baselines are updated by the test tasks, so the task is never up-to-date.
+ */
+public abstract class AffectedTestsAnalysis extends DefaultTask {
+
+    public static final String ALL_TESTS = "*";
+
+    @InputFiles
+    @IgnoreEmptyDirectories
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getTestClassesDirs();
+
+    @Classpath
+    public abstract ConfigurableFileCollection getClasspath();
+
+    @Input
+    public abstract SetProperty<String> getTestTaskNames();
+
+    @Internal
+    public abstract DirectoryProperty getBaselinesDir();
+
+    @OutputFile
+    public abstract RegularFileProperty getStateFile();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getSelectionsDir();
+
+    public static String getTestTaskFileName(String testTaskName) {
+        return testTaskName + ".txt";
+    }
+
+    /**
+     * Returns the name of the file in {@link #getBaselinesDir()} with the key of the test task settings
+     * the baseline was made with.
+     */
+    public static String getTestTaskKeyFileName(String testTaskName) {
+        return testTaskName + ".key";
+    }
+
+    {
+        getOutputs().upToDateWhen(Specs.satisfyNone());
+    }
+
+
+    @TaskAction
+    @SneakyThrows
+    public void execute() {
+        var stateFile = getStateFile().get().getAsFile();
+        var state = index(getClasspath().plus(getTestClassesDirs()), State.read(stateFile));
+        state.write(stateFile);
+
+        var baselinesDir = getBaselinesDir().get().getAsFile();
+        var selectionsDir = getSelectionsDir().get().getAsFile();
+        for (var testTaskName : getTestTaskNames().get()) {
+            var fileName = getTestTaskFileName(testTaskName);
+            var baseline = State.read(new File(baselinesDir, fileName));
+            var affectedTests = selectAffectedTests(getTestClassesDirs(), state, baseline);
+            var selectionFile = new File(selectionsDir, fileName);
+            if (affectedTests == null) {
+                getLogger().info(
+                    "All tests are selected for {}, as there is no baseline, or resources or jars were changed",
+                    testTaskName
+                );
+                write(selectionFile.toPath(), List.of(ALL_TESTS), UTF_8);
+            } else {
+                getLogger().info("Affected test classes for {}: {}", testTaskName, affectedTests);
+                write(selectionFile.toPath(), affectedTests, UTF_8);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,327 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.readAllLines;
+import static java.nio.file.Files.walk;
+import static lombok.AccessLevel.PRIVATE;
+import static name.remal.gradle_plugins.test_source_sets.ClassDependenciesParser.parseClassDependencies;
+import static name.remal.gradle_plugins.test_source_sets.ClassDependenciesParser.parseConstantFields;
+import static name.remal.gradle_plugins.test_source_sets.TestShardsPlanner.findTopLevelClassNames;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import lombok.NoArgsConstructor;
+import lombok.SneakyThrows;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Selects test classes affected by changes since the baseline.
+ *
+ * <p>Classes of all directories of the classpath are indexed with their dependencies.
+ * A test class is affected if it or any class it transitively depends on was changed, added, or removed.
+ * Dependencies of unchanged classes are taken from the previous index, so only changed classes are parsed.
+ *
+ * <p>Dependencies via resources and jars can't be tracked, so all tests are selected if any of them changed,
+ * or if there is no baseline. Javac inlines values of constant fields, so classes using a constant don't depend
+ * on the class declaring it. That's why all tests are also selected if values of constant fields of a class changed.
+ */
+@NoArgsConstructor(access = PRIVATE)
+abstract class AffectedTestsAnalyzer {
+
+    /**
+     * State of the classpath: classes with their hashes, dependencies and hashes of constant fields,
+     * hashes of resources, and fingerprints of jars.
+     */
+    static class State {
+
+        final Map<String, ClassEntry> classes = new TreeMap<>();
+
+        final Map<String, String> resources = new TreeMap<>();
+
+        final Map<String, String> jars = new TreeMap<>();
+
+        @SneakyThrows
+        public void write(File file) {
+            List<String> lines = new ArrayList<>();
+            classes.forEach((name, entry) ->
+                lines.add("C\t" + name + '\t' + entry.hash + '\t' + String.join(",", entry.dependencies)
+                    + '\t' + entry.constantsHash
+                )
+            );
+            resources.forEach((path, hash) -> lines.add("R\t" + path + '\t' + hash));
+            jars.forEach((path, fingerprint) -> lines.add("J\t" + path + '\t' + fingerprint));
+
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), lines, UTF_8);
+        }
+
+        /**
+         * Returns {@code null} if the file doesn't exist or can't be read.
+         */
+        @Nullable
+        public static State read(File file) {
+            var path = file.toPath();
+            if (!isRegularFile(path)) {
+                return null;
+            }
+
+            try {
+                var state = new State();
+                for (var line : readAllLines(path, UTF_8)) {
+                    var parts = line.split("\t", -1);
+                    if (parts[0].equals("C") && parts.length == 5) {
+                        var dependencies = parts[3].isEmpty()
+                            ? Set.<String>of()
+                            : new TreeSet<>(List.of(parts[3].split(",")));
+                        state.classes.put(parts[1], new ClassEntry(parts[2], dependencies, parts[4]));
+                    } else if (parts[0].equals("R") && parts.length == 3) {
+                        state.resources.put(parts[1], parts[2]);
+                    } else if (parts[0].equals("J") && parts.length == 3) {
+                        state.jars.put(parts[1], parts[2]);
+                    } else {
+                        return null;
+                    }
+                }
+                return state;
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+    }
+
+    static class ClassEntry {
+
+        final String hash;
+
+        final Set<String> dependencies;
+
+        /**
+         * Hash of names and values of constant fields, or an empty string if the class has no constant fields.
+         */
+        final String constantsHash;
+
+        ClassEntry(String hash, Set<String> dependencies, String constantsHash) {
+            this.hash = hash;
+            this.dependencies = dependencies;
+            this.constantsHash = constantsHash;
+        }
+
+    }
+
+
+    /**
+     * Indexes the classpath. Dependencies of classes with the same hash are reused from the previous state.
+     */
+    @SneakyThrows
+    public static State index(Iterable<File> classpath, @Nullable State previousState) {
+        var state = new State();
+        Set<File> entryFiles = new LinkedHashSet<>();
+        classpath.forEach(entryFiles::add);
+        for (var entryFile : entryFiles) {
+            var entry = entryFile.toPath();
+            if (isDirectory(entry)) {
+                indexDirectory(entry, state, previousState);
+            } else if (isRegularFile(entry)) {
+                state.jars.put(entry.toAbsolutePath().toString(), Files.size(entry) + ":" + entryFile.lastModified());
+            }
+        }
+        return state;
+    }
+
+    @SneakyThrows
+    private static void indexDirectory(Path dir, State state, @Nullable State previousState) {
+        final List<Path> files;
+        try (var paths = walk(dir)) {
+            files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+
+        for (var file : files) {
+            var bytes = readAllBytes(file);
+            var hash = hash(bytes);
+            var relativePath = dir.relativize(file).toString().replace(File.separatorChar, '/');
+            if (!relativePath.endsWith(".class")
+                || relativePath.endsWith("module-info.class")
+                || relativePath.endsWith("package-info.class")
+            ) {
+                state.resources.put(file.toAbsolutePath().toString(), hash);
+                continue;
+            }
+
+            var className = relativePath.substring(0, relativePath.length() - ".class".length()).replace('/', '.');
+            if (state.classes.containsKey(className)) {
+                // the first class on the classpath wins
+                continue;
+            }
+
+            var previousEntry = previousState != null ? previousState.classes.get(className) : null;
+            if (previousEntry != null && previousEntry.hash.equals(hash)) {
+                state.classes.put(className, previousEntry);
+            } else {
+                state.classes.put(className, new ClassEntry(
+                    hash,
+                    parseClassDependencies(bytes),
+                    computeConstantsHash(parseConstantFields(bytes))
+                ));
+            }
+        }
+    }
+
+
+    /**
+     * Returns names of affected test classes, or {@code null} if all test classes should be executed.
+     */
+    @Nullable
+    public static List<String> selectAffectedTests(
+        Iterable<File> testClassesDirs,
+        State state,
+        @Nullable State baseline
+    ) {
+        if (baseline == null
+            || !baseline.jars.equals(state.jars)
+            || !baseline.resources.equals(state.resources)
+        ) {
+            return null;
+        }
+
+        Set<String> changedClasses = new HashSet<>();
+        for (var classEntry : state.classes.entrySet()) {
+            var name = classEntry.getKey();
+            var entry = classEntry.getValue();
+            var baselineEntry = baseline.classes.get(name);
+            if (baselineEntry == null) {
+                changedClasses.add(name);
+            } else if (!baselineEntry.hash.equals(entry.hash)) {
+                if (!baselineEntry.constantsHash.equals(entry.constantsHash)) {
+                    return null;
+                }
+                changedClasses.add(name);
+            }
+        }
+        for (var baselineEntry : baseline.classes.entrySet()) {
+            if (!state.classes.containsKey(baselineEntry.getKey())) {
+                if (!baselineEntry.getValue().constantsHash.isEmpty()) {
+                    return null;
+                }
+                changedClasses.add(baselineEntry.getKey());
+            }
+        }
+
+        var affectedClasses = getDependentClasses(state, changedClasses);
+        return findTopLevelClassNames(testClassesDirs).stream()
+            .filter(affectedClasses::contains)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the classes and all classes transitively depending on them.
+     */
+    private static Set<String> getDependentClasses(State state, Set<String> classes) {
+        Map<String, List<String>> dependents = new HashMap<>();
+        state.classes.forEach((name, entry) ->
+            entry.dependencies.forEach(dependency ->
+                dependents.computeIfAbsent(dependency, __ -> new ArrayList<>()).add(name)
+            )
+        );
+
+        Set<String> result = new HashSet<>(classes);
+        var queue = new ArrayDeque<>(classes);
+        while (!queue.isEmpty()) {
+            var name = queue.remove();
+            for (var dependent : dependents.getOrDefault(name, List.of())) {
+                if (result.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Returns keys of top-level test classes. A key is calculated from hashes of the test class
+     * and all classes it transitively depends on, and from hashes of all resources and jars of the classpath.
+     */
+    public static Map<String, String> computeTestClassKeys(Iterable<File> testClassesDirs, State state) {
+        var classpathHash = new StringBuilder();
+        state.resources.forEach((path, hash) ->
+            classpathHash.append(path).append(':').append(hash).append('\n')
+        );
+        state.jars.forEach((path, fingerprint) ->
+            classpathHash.append(path).append(':').append(fingerprint).append('\n')
+        );
+
+        Map<String, String> keys = new TreeMap<>();
+        for (var testClassName : findTopLevelClassNames(testClassesDirs)) {
+            var key = new StringBuilder(classpathHash);
+            for (var className : getDependencyClasses(state, testClassName)) {
+                var entry = state.classes.get(className);
+                if (entry != null) {
+                    key.append(className).append(':').append(entry.hash).append('\n');
+                }
+            }
+            keys.put(testClassName, hash(key.toString().getBytes(UTF_8)));
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the class and all classes it transitively depends on, sorted by name.
+     */
+    private static Set<String> getDependencyClasses(State state, String className) {
+        Set<String> result = new TreeSet<>();
+        result.add(className);
+        var queue = new ArrayDeque<String>();
+        queue.add(className);
+        while (!queue.isEmpty()) {
+            var entry = state.classes.get(queue.remove());
+            if (entry == null) {
+                continue;
+            }
+
+            for (var dependency : entry.dependencies) {
+                if (result.add(dependency)) {
+                    queue.add(dependency);
+                }
+            }
+        }
+        return result;
+    }
+
+
+    private static String computeConstantsHash(Map<String, String> constantFields) {
+        if (constantFields.isEmpty()) {
+            return "";
+        }
+
+        var constants = new StringBuilder();
+        constantFields.forEach((field, value) ->
+            constants.append(field).append('=').append(value).append('\n')
+        );
+        return hash(constants.toString().getBytes(UTF_8));
+    }
+
+    @SneakyThrows
+    static String hash(byte[] bytes) {
+        var digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+        return String.format("%064x", new BigInteger(1, digest));
+    }
+
+}
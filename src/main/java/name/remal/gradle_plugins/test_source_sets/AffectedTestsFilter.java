@@ -0,0 +1,177 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.copy;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.readAllLines;
+import static java.nio.file.Files.readString;
+import static java.nio.file.Files.writeString;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static name.remal.gradle_plugins.test_source_sets.TestClassResultsCache.computeTestTaskKey;
+import static name.remal.gradle_plugins.test_source_sets.TestShardsPlanner.findTopLevelClassNames;
+
+import java.io.File;
+import java.util.HashSet;
+import lombok.SneakyThrows;
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.api.tasks.testing.TestDescriptor;
+import org.gradle.api.tasks.testing.TestListener;
+import org.gradle.api.tasks.testing.TestResult;
+import org.gradle.api.tasks.testing.TestResult.ResultType;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Restricts a {@link Test} task to test classes selected by {@link AffectedTestsAnalysis}.
+ *
+ * <p>Not affected test classes are excluded, so the selection is combined with other filters,
+ * like the filter of a shard task.
+ *
+ * <p>The selection is based on the classpath only. If settings of the test task changed since the baseline
+ * (see {@link TestClassResultsCache#computeTestTaskKey(Test)}), all test classes are executed.
+ */
+class AffectedTestsFilter implements Action<Task> {
+
+    private final File selectionFile;
+
+    private final File baselineKeyFile;
+
+    public AffectedTestsFilter(File selectionFile, File baselineKeyFile) {
+        this.selectionFile = selectionFile;
+        this.baselineKeyFile = baselineKeyFile;
+    }
+
+    @Override
+    @SneakyThrows
+    public void execute(Task task) {
+        if (isTestTaskKeyChanged((Test) task, baselineKeyFile)) {
+            task.getLogger().info("All tests are selected, as settings of the test task were changed");
+            return;
+        }
+
+        var classNames = readAllLines(selectionFile.toPath(), UTF_8);
+        if (classNames.contains(AffectedTestsAnalysis.ALL_TESTS)) {
+            return;
+        }
+
+        var affectedClassNames = new HashSet<>(classNames);
+        var test = (Test) task;
+        var filter = test.getFilter();
+        for (var className : findTopLevelClassNames(test.getTestClassesDirs())) {
+            if (!affectedClassNames.contains(className)) {
+                filter.excludeTestsMatching(className);
+                filter.excludeTestsMatching(className + "$*");
+            }
+        }
+    }
+
+
+    @SneakyThrows
+    private static boolean isTestTaskKeyChanged(Test task, File baselineKeyFile) {
+        var baselineKeyPath = baselineKeyFile.toPath();
+        return !isRegularFile(baselineKeyPath)
+            || !readString(baselineKeyPath, UTF_8).equals(computeTestTaskKey(task));
+    }
+
+
+    /**
+     * Skips the test task if no test classes are affected and settings of the test task are not changed.
+     */
+    static class IsNotEmpty implements Spec<Task> {
+
+        private final File selectionFile;
+
+        private final File baselineKeyFile;
+
+        public IsNotEmpty(File selectionFile, File baselineKeyFile) {
+            this.selectionFile = selectionFile;
+            this.baselineKeyFile = baselineKeyFile;
+        }
+
+        @Override
+        public boolean isSatisfiedBy(Task task) {
+            return selectionFile.length() > 0
+                || isTestTaskKeyChanged((Test) task, baselineKeyFile);
+        }
+
+    }
+
+
+    /**
+     * Makes the analyzed state and the key of the test task the new baseline of the test task.
+     *
+     * <p>The baseline is updated only if all executed tests passed, including when failures are ignored,
+     * and only if the task isn't filtered by the user, as not all selected test classes are executed otherwise.
+     *
+     * <p>It's registered as a spec of the task, to check the filters before actions of the plugin add own filters,
+     * and as an action, to listen to test results.
+     */
+    static class UpdateBaseline implements Spec<Task>, Action<Task>, TestListener {
+
+        private final File stateFile;
+
+        private final File baselineFile;
+
+        private final File baselineKeyFile;
+
+        private final boolean commandLineFilters;
+
+        private boolean filtered = true;
+
+        @Nullable
+        private String testTaskKey;
+
+        public UpdateBaseline(File stateFile, File baselineFile, File baselineKeyFile, boolean commandLineFilters) {
+            this.stateFile = stateFile;
+            this.baselineFile = baselineFile;
+            this.baselineKeyFile = baselineKeyFile;
+            this.commandLineFilters = commandLineFilters;
+        }
+
+        @Override
+        public boolean isSatisfiedBy(Task task) {
+            var filter = ((Test) task).getFilter();
+            filtered = commandLineFilters
+                || !filter.getIncludePatterns().isEmpty()
+                || !filter.getExcludePatterns().isEmpty();
+            return true;
+        }
+
+        @Override
+        public void execute(Task task) {
+            if (!filtered) {
+                testTaskKey = computeTestTaskKey((Test) task);
+                ((Test) task).addTestListener(this);
+            }
+        }
+
+        @Override
+        @SneakyThrows
+        public void afterSuite(TestDescriptor suite, TestResult result) {
+            if (suite.getParent() == null && result.getResultType() == ResultType.SUCCESS && testTaskKey != null) {
+                baselineFile.getParentFile().mkdirs();
+                copy(stateFile.toPath(), baselineFile.toPath(), REPLACE_EXISTING);
+                writeString(baselineKeyFile.toPath(), testTaskKey, UTF_8);
+            }
+        }
+
+        @Override
+        public void beforeSuite(TestDescriptor suite) {
+            // do nothing
+        }
+
+        @Override
+        public void beforeTest(TestDescriptor testDescriptor) {
+            // do nothing
+        }
+
+        @Override
+        public void afterTest(TestDescriptor testDescriptor, TestResult result) {
+            // do nothing
+        }
+
+    }
+
+}
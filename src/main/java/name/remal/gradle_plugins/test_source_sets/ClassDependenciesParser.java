@@ -0,0 +1,223 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static lombok.AccessLevel.PRIVATE;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import lombok.NoArgsConstructor;
+import lombok.SneakyThrows;
+
+/**
+ * Reads names of classes referenced by a class file from its constant pool.
+ *
+ * <p>Class constants and all type descriptors and signatures found in UTF-8 constants are taken into account.
+ * It over-approximates dependencies (a string constant looking like a descriptor is considered a dependency),
+ * which is safe for test selection.
+ */
+@NoArgsConstructor(access = PRIVATE)
+abstract class ClassDependenciesParser {
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final Pattern DESCRIPTOR_CLASS_NAME = Pattern.compile("L([\\w/$]+)[;<]");
+
+    /**
+     * Returns binary names (like {@code pkg.Outer$Inner}) of classes referenced by the class file,
+     * excluding the class itself.
+     *
+     * @throws IllegalArgumentException if the bytes are not a class file
+     */
+    @SneakyThrows
+    public static Set<String> parseClassDependencies(byte[] classBytes) {
+        var in = new DataInputStream(new ByteArrayInputStream(classBytes));
+        var constantPool = readConstantPool(in);
+        var utf8Constants = constantPool.utf8Constants;
+        var classNameIndexes = constantPool.classNameIndexes;
+
+        in.readUnsignedShort(); // access flags
+        var thisClassName = toBinaryName(utf8Constants[classNameIndexes[in.readUnsignedShort()]]);
+
+        var dependencies = new TreeSet<String>();
+        for (int i = 1; i < utf8Constants.length; ++i) {
+            var classNameIndex = classNameIndexes[i];
+            if (classNameIndex != 0) {
+                addClassName(dependencies, utf8Constants[classNameIndex]);
+            }
+
+            var utf8 = utf8Constants[i];
+            if (utf8 != null && utf8.indexOf(';') >= 0) {
+                var matcher = DESCRIPTOR_CLASS_NAME.matcher(utf8);
+                while (matcher.find()) {
+                    dependencies.add(toBinaryName(matcher.group(1)));
+                }
+            }
+        }
+
+        dependencies.remove(thisClassName);
+        return dependencies;
+    }
+
+    /**
+     * Returns values of constant fields (fields with {@code ConstantValue} attribute) of the class file
+     * by field names and descriptors (like {@code NAME:Ljava/lang/String;}).
+     *
+     * <p>Javac inlines values of such fields into classes using them, so these classes don't reference
+     * the class declaring the fields.
+     *
+     * @throws IllegalArgumentException if the bytes are not a class file
+     */
+    @SneakyThrows
+    public static Map<String, String> parseConstantFields(byte[] classBytes) {
+        var in = new DataInputStream(new ByteArrayInputStream(classBytes));
+        var constantPool = readConstantPool(in);
+        var utf8Constants = constantPool.utf8Constants;
+
+        in.readUnsignedShort(); // access flags
+        in.readUnsignedShort(); // this class
+        in.readUnsignedShort(); // super class
+        var interfacesCount = in.readUnsignedShort();
+        in.skipBytes(interfacesCount * 2);
+
+        Map<String, String> constantFields = new TreeMap<>();
+        var fieldsCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldsCount; ++i) {
+            in.readUnsignedShort(); // access flags
+            var fieldName = utf8Constants[in.readUnsignedShort()] + ':' + utf8Constants[in.readUnsignedShort()];
+            var attributesCount = in.readUnsignedShort();
+            for (int j = 0; j < attributesCount; ++j) {
+                var attributeName = utf8Constants[in.readUnsignedShort()];
+                var attributeLength = in.readInt();
+                if ("ConstantValue".equals(attributeName)) {
+                    constantFields.put(fieldName, constantPool.values[in.readUnsignedShort()]);
+                } else {
+                    in.skipBytes(attributeLength);
+                }
+            }
+        }
+        return constantFields;
+    }
+
+    private static class ConstantPool {
+
+        final String[] utf8Constants;
+
+        final int[] classNameIndexes;
+
+        /**
+         * Values of numeric and string constants.
+         */
+        final String[] values;
+
+        ConstantPool(int constantPoolCount) {
+            this.utf8Constants = new String[constantPoolCount];
+            this.classNameIndexes = new int[constantPoolCount];
+            this.values = new String[constantPoolCount];
+        }
+
+    }
+
+    @SneakyThrows
+    private static ConstantPool readConstantPool(DataInputStream in) {
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IllegalArgumentException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        var constantPoolCount = in.readUnsignedShort();
+        var constantPool = new ConstantPool(constantPoolCount);
+        var stringIndexes = new int[constantPoolCount];
+        for (int i = 1; i < constantPoolCount; ++i) {
+            var tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    constantPool.utf8Constants[i] = in.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    constantPool.classNameIndexes[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                    stringIndexes[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.readUnsignedShort();
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                    break;
+                case CONSTANT_INTEGER:
+                    constantPool.values[i] = "I" + in.readInt();
+                    break;
+                case CONSTANT_FLOAT:
+                    constantPool.values[i] = "F" + in.readInt();
+                    break;
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.readInt();
+                    break;
+                case CONSTANT_LONG:
+                    constantPool.values[i] = "J" + in.readLong();
+                    ++i;
+                    break;
+                case CONSTANT_DOUBLE:
+                    constantPool.values[i] = "D" + in.readLong();
+                    ++i;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported constant pool tag: " + tag);
+            }
+        }
+
+        for (int i = 1; i < constantPoolCount; ++i) {
+            if (stringIndexes[i] != 0) {
+                constantPool.values[i] = "S" + constantPool.utf8Constants[stringIndexes[i]];
+            }
+        }
+
+        return constantPool;
+    }
+
+    private static void addClassName(Set<String> dependencies, String internalName) {
+        if (internalName.startsWith("[")) {
+            var matcher = DESCRIPTOR_CLASS_NAME.matcher(internalName);
+            while (matcher.find()) {
+                dependencies.add(toBinaryName(matcher.group(1)));
+            }
+        } else {
+            dependencies.add(toBinaryName(internalName));
+        }
+    }
+
+    private static String toBinaryName(String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+}
@@ -0,0 +1,72 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.util.Collections.emptySet;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ConfigurationContainer;
+
+/**
+ * Wires {@link Configuration#extendsFrom(Configuration...)} edges by configuration names.
+ *
+ * <p>A single listener is registered in the {@link ConfigurationContainer}. Configurations are indexed by name,
+ * so every edge is resolved with a constant number of hash lookups once both configurations exist,
+ * regardless of which one is added first.
+ */
+class ConfigurationExtendsFromWiring {
+
+
+    private final Map<String, Configuration> configurations = new HashMap<>();
+
+    private final Map<String, Set<String>> parentsByChild = new HashMap<>();
+
+    private final Map<String, Set<String>> childrenByParent = new HashMap<>();
+
+    private long lookupsCount;
+
+    public ConfigurationExtendsFromWiring(ConfigurationContainer configurationContainer) {
+        configurationContainer.all(this::onConfigurationAdded);
+        configurationContainer.whenObjectRemoved(conf -> configurations.remove(conf.getName(), conf));
+    }
+
+    public void extendsFrom(String childName, String parentName) {
+        var parents = parentsByChild.computeIfAbsent(childName, __ -> new LinkedHashSet<>());
+        if (!parents.add(parentName)) {
+            return;
+        }
+
+        childrenByParent.computeIfAbsent(parentName, __ -> new LinkedHashSet<>()).add(childName);
+        wire(childName, parentName);
+    }
+
+    private void onConfigurationAdded(Configuration conf) {
+        var name = conf.getName();
+        configurations.put(name, conf);
+        parentsByChild.getOrDefault(name, emptySet()).forEach(parentName -> wire(name, parentName));
+        childrenByParent.getOrDefault(name, emptySet()).forEach(childName -> wire(childName, name));
+    }
+
+    private void wire(String childName, String parentName) {
+        lookupsCount++;
+
+        var child = configurations.get(childName);
+        if (child == null) {
+            return;
+        }
+
+        var parent = configurations.get(parentName);
+        if (parent == null) {
+            return;
+        }
+
+        child.extendsFrom(parent);
+    }
+
+    long getLookupsCount() {
+        return lookupsCount;
+    }
+
+}
@@ -0,0 +1,122 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static name.remal.gradle_plugins.toolkit.ObjectUtils.doNotInline;
+
+import java.io.File;
+import name.remal.gradle_plugins.test_source_sets.ConfigurationProfilerBuildService.ProjectStats;
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.SourceSetContainer;
+
+/**
+ * Records elapsed time and the number of fired callbacks of the plugin's configuration logic,
+ * and the number of objects realized in the project.
+ *
+ * <p>It's enabled by {@value #PROFILE_PROPERTY} Gradle property. If it's disabled, nothing is recorded,
+ * and callbacks are not wrapped.
+ *
+ * <p>The data is collected by {@link ConfigurationProfilerBuildService}, and written to {@value #REPORT_FILE_PATH}
+ * file in the build dir of every profiled project. The data of all projects is written to
+ * {@value #ALL_PROJECTS_REPORT_FILE_PATH} file in the build dir of the root project,
+ * or to the file set by {@value #REPORT_FILE_PROPERTY} Gradle property (relative to the root project dir).
+ */
+abstract class ConfigurationProfiler {
+
+    public static final String PROFILE_PROPERTY = doNotInline("name.remal.test-source-sets.profile");
+
+    public static final String REPORT_FILE_PROPERTY = doNotInline("name.remal.test-source-sets.profile.report-file");
+
+    public static final String REPORT_FILE_PATH = doNotInline("reports/test-source-sets/configuration-profile.json");
+
+    public static final String ALL_PROJECTS_REPORT_FILE_PATH =
+        doNotInline("reports/test-source-sets/configuration-profile-all-projects.json");
+
+    public static ConfigurationProfiler createConfigurationProfiler(Project project) {
+        // `project.findProperty()` looks up properties of parent projects, which is not allowed for isolated projects
+        var isEnabled = project.getProviders().gradleProperty(PROFILE_PROPERTY)
+            .map(Boolean::parseBoolean)
+            .getOrElse(false);
+        if (!isEnabled) {
+            return DISABLED;
+        }
+
+        var service = project.getGradle().getSharedServices().registerIfAbsent(
+            ConfigurationProfilerBuildService.class.getName()
+                + '-' + System.identityHashCode(ConfigurationProfilerBuildService.class),
+            ConfigurationProfilerBuildService.class,
+            __ -> { }
+        ).get();
+
+        var layout = project.getLayout();
+        var allProjectsReportPath = project.getProviders().gradleProperty(REPORT_FILE_PROPERTY);
+        if (allProjectsReportPath.isPresent()) {
+            var rootDir = project.getRootDir();
+            service.setAllProjectsReportFile(layout.file(allProjectsReportPath.map(path -> {
+                var file = new File(path);
+                return file.isAbsolute() ? file : new File(rootDir, path);
+            })));
+        } else if (project.getPath().equals(":") && project.getGradle().getParent() == null) {
+            // the root project of the root build
+            service.setAllProjectsReportFile(layout.getBuildDirectory().file(ALL_PROJECTS_REPORT_FILE_PATH));
+        }
+
+        var reportFile = layout.getBuildDirectory().file(REPORT_FILE_PATH);
+        var stats = service.getProjectStats(project.getPath(), reportFile);
+        project.getTasks().configureEach(__ -> stats.objectRealized("tasks"));
+        project.getConfigurations().configureEach(__ -> stats.objectRealized("configurations"));
+        getExtension(project, SourceSetContainer.class).configureEach(__ -> stats.objectRealized("sourceSets"));
+        return new Enabled(stats);
+    }
+
+
+    /**
+     * Executes the action, recording it as a callback of the section.
+     * Elapsed time of the section includes time of callbacks of other sections executed by the action.
+     */
+    public abstract void run(String section, Runnable action);
+
+    /**
+     * Returns an action that records its executions as callbacks of the section.
+     */
+    public abstract <T> Action<T> wrap(String section, Action<T> action);
+
+
+    private static final ConfigurationProfiler DISABLED = new ConfigurationProfiler() {
+        @Override
+        public void run(String section, Runnable action) {
+            action.run();
+        }
+
+        @Override
+        public <T> Action<T> wrap(String section, Action<T> action) {
+            return action;
+        }
+    };
+
+    private static class Enabled extends ConfigurationProfiler {
+
+        private final ProjectStats stats;
+
+        public Enabled(ProjectStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public void run(String section, Runnable action) {
+            var startNanos = System.nanoTime();
+            try {
+                action.run();
+            } finally {
+                stats.callbackFired(section, System.nanoTime() - startNanos);
+            }
+        }
+
+        @Override
+        public <T> Action<T> wrap(String section, Action<T> action) {
+            return object -> run(section, () -> action.execute(object));
+        }
+
+    }
+
+}
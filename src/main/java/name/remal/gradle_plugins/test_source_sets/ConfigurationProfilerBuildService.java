@@ -0,0 +1,149 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.SneakyThrows;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Collects data recorded by {@link ConfigurationProfiler} for all projects of the build,
+ * and writes it as JSON reports when the build is finished:
+ * a report of every profiled project into its build dir, and a report of all projects.
+ *
+ * <p>Projects can be configured in parallel, so all the data structures are thread-safe.
+ */
+public abstract class ConfigurationProfilerBuildService
+    implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+
+    private final Map<String, ProjectStats> projects = new ConcurrentSkipListMap<>();
+
+    @Nullable
+    private volatile Provider<RegularFile> allProjectsReportFile;
+
+    ProjectStats getProjectStats(String projectPath, Provider<RegularFile> reportFile) {
+        return projects.computeIfAbsent(projectPath, __ -> new ProjectStats(reportFile));
+    }
+
+    void setAllProjectsReportFile(Provider<RegularFile> allProjectsReportFile) {
+        this.allProjectsReportFile = allProjectsReportFile;
+    }
+
+
+    @Override
+    public void close() {
+        for (var projectEntry : projects.entrySet()) {
+            var json = new StringBuilder();
+            appendProjectJson(json, projectEntry.getKey(), projectEntry.getValue(), "");
+            write(projectEntry.getValue().reportFile, json.append('\n'));
+        }
+
+        var allProjectsReportFile = this.allProjectsReportFile;
+        if (allProjectsReportFile != null) {
+            var json = new StringBuilder();
+            json.append("{\n  \"projects\": [");
+            var isFirstProject = true;
+            for (var projectEntry : projects.entrySet()) {
+                if (!isFirstProject) {
+                    json.append(',');
+                }
+                isFirstProject = false;
+
+                json.append("\n    ");
+                appendProjectJson(json, projectEntry.getKey(), projectEntry.getValue(), "    ");
+            }
+            json.append("\n  ]\n}\n");
+            write(allProjectsReportFile, json);
+        }
+    }
+
+    @SneakyThrows
+    private static void write(Provider<RegularFile> reportFile, CharSequence json) {
+        var reportPath = reportFile.get().getAsFile().toPath();
+        createDirectories(reportPath.getParent());
+        Files.write(reportPath, json.toString().getBytes(UTF_8));
+    }
+
+    private static void appendProjectJson(StringBuilder json, String projectPath, ProjectStats stats, String indent) {
+        json.append("{\n").append(indent).append("  \"path\": ").append(toJsonString(projectPath));
+
+        json.append(",\n").append(indent).append("  \"sections\": {");
+        var isFirstSection = true;
+        for (var sectionEntry : stats.sections.entrySet()) {
+            if (!isFirstSection) {
+                json.append(',');
+            }
+            isFirstSection = false;
+
+            var sectionStats = sectionEntry.getValue();
+            json.append('\n').append(indent).append("    ")
+                .append(toJsonString(sectionEntry.getKey())).append(": {")
+                .append("\"elapsedNanos\": ").append(sectionStats.elapsedNanos.sum())
+                .append(", \"callbacks\": ").append(sectionStats.callbacks.sum())
+                .append('}');
+        }
+        json.append('\n').append(indent).append("  }");
+
+        json.append(",\n").append(indent).append("  \"realizedObjects\": {");
+        var isFirstType = true;
+        for (var realizedEntry : stats.realizedObjects.entrySet()) {
+            if (!isFirstType) {
+                json.append(',');
+            }
+            isFirstType = false;
+
+            json.append('\n').append(indent).append("    ")
+                .append(toJsonString(realizedEntry.getKey())).append(": ")
+                .append(realizedEntry.getValue().sum());
+        }
+        json.append('\n').append(indent).append("  }");
+
+        json.append('\n').append(indent).append('}');
+    }
+
+    private static String toJsonString(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+
+    static class ProjectStats {
+
+        private final Provider<RegularFile> reportFile;
+
+        private final Map<String, SectionStats> sections = new ConcurrentSkipListMap<>();
+
+        private final Map<String, LongAdder> realizedObjects = new ConcurrentSkipListMap<>();
+
+        public ProjectStats(Provider<RegularFile> reportFile) {
+            this.reportFile = reportFile;
+        }
+
+        public void callbackFired(String section, long elapsedNanos) {
+            var sectionStats = sections.computeIfAbsent(section, __ -> new SectionStats());
+            sectionStats.elapsedNanos.add(elapsedNanos);
+            sectionStats.callbacks.increment();
+        }
+
+        public void objectRealized(String type) {
+            realizedObjects.computeIfAbsent(type, __ -> new LongAdder()).increment();
+        }
+
+    }
+
+    private static class SectionStats {
+
+        private final LongAdder elapsedNanos = new LongAdder();
+
+        private final LongAdder callbacks = new LongAdder();
+
+    }
+
+}
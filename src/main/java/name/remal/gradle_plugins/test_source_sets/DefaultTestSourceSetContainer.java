@@ -0,0 +1,151 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import groovy.lang.Closure;
+import groovy.lang.MissingMethodException;
+import groovy.lang.MissingPropertyException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import javax.inject.Inject;
+import lombok.experimental.Delegate;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.gradle.api.NamedDomainObjectContainer;
+import org.gradle.api.tasks.SourceSet;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * {@link TestSourceSetContainer} that delegates all container methods to a container created by
+ * {@link org.gradle.api.model.ObjectFactory#domainObjectContainer}.
+ *
+ * <p>It's instantiated by Gradle, so its properties are managed and it's decorated for DSL.
+ * Container methods are dispatched statically, without reflection.
+ *
+ * <p>Groovy DSL of Gradle containers (creating elements in a configuration block, accessing elements by name)
+ * is implemented via {@link #configure(Closure)}, {@link #methodMissing(String, Object)}
+ * and {@link #propertyMissing(String)}.
+ */
+public abstract class DefaultTestSourceSetContainer implements TestSourceSetContainer {
+
+    private interface DelegateExcludes {
+
+        @SuppressWarnings("rawtypes")
+        NamedDomainObjectContainer<SourceSet> configure(Closure configureClosure);
+
+    }
+
+
+    @Delegate(excludes = DelegateExcludes.class)
+    private final NamedDomainObjectContainer<SourceSet> delegate;
+
+    private final Deque<Closure<?>> configuringClosures = new ArrayDeque<>();
+
+    @Inject
+    public DefaultTestSourceSetContainer(NamedDomainObjectContainer<SourceSet> delegate) {
+        this.delegate = delegate;
+
+        getTestSuffixCheck().convention(TestSuffixCheckMode.FAIL);
+        getJacocoOfflineInstrumentation().convention(false);
+        getSharedTestKit().convention(false);
+        getTestTasksOrder().convention(TestTasksOrder.DEFAULT);
+        getAffectedTestsOnly().convention(false);
+        getTestClassResultsCache().convention(false);
+        getClassDataSharing().convention(false);
+    }
+
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public NamedDomainObjectContainer<SourceSet> configure(Closure configureClosure) {
+        var closure = (Closure<?>) configureClosure.clone();
+        closure.setResolveStrategy(Closure.DELEGATE_FIRST);
+        closure.setDelegate(this);
+
+        configuringClosures.push(closure);
+        try {
+            closure.call(this);
+        } finally {
+            configuringClosures.pop();
+        }
+
+        return this;
+    }
+
+    /**
+     * Inside of {@link #configure(Closure)} block, the method is looked up in the delegate,
+     * then in the owner of the block. If it's not found, {@code name { ... }} and {@code name()}
+     * create the test source set, like in configuration blocks of Gradle containers.
+     */
+    @Nullable
+    public Object methodMissing(String name, Object args) {
+        var closure = configuringClosures.peek();
+        if (closure == null) {
+            return InvokerHelper.invokeMethod(delegate, name, args);
+        }
+
+        try {
+            return InvokerHelper.invokeMethod(delegate, name, args);
+        } catch (MissingMethodException e) {
+            rethrowIfNotMissing(e, name);
+        }
+
+        try {
+            return InvokerHelper.invokeMethod(closure.getOwner(), name, args);
+        } catch (MissingMethodException e) {
+            rethrowIfNotMissing(e, name);
+        }
+
+        var argsArray = (Object[]) args;
+        if (argsArray.length == 0) {
+            return delegate.maybeCreate(name);
+        } else if (argsArray.length == 1 && argsArray[0] instanceof Closure) {
+            delegate.maybeCreate(name);
+            return InvokerHelper.invokeMethod(delegate, name, args);
+        }
+
+        throw new MissingMethodException(name, getClass(), argsArray);
+    }
+
+    /**
+     * Inside of {@link #configure(Closure)} block, the property is looked up in the delegate,
+     * then in the owner of the block. A missing property doesn't create a test source set,
+     * so a typo fails fast. Use {@code name()} or {@code name { }} to create one.
+     */
+    @Nullable
+    public Object propertyMissing(String name) {
+        var closure = configuringClosures.peek();
+        if (closure == null) {
+            return InvokerHelper.getProperty(delegate, name);
+        }
+
+        try {
+            return InvokerHelper.getProperty(delegate, name);
+        } catch (MissingPropertyException e) {
+            rethrowIfNotMissing(e, name);
+        }
+
+        try {
+            return InvokerHelper.getProperty(closure.getOwner(), name);
+        } catch (MissingPropertyException e) {
+            rethrowIfNotMissing(e, name);
+        }
+
+        throw new MissingPropertyException(name, getClass());
+    }
+
+    public void propertyMissing(String name, @Nullable Object value) {
+        InvokerHelper.setProperty(delegate, name, value);
+    }
+
+
+    private static void rethrowIfNotMissing(MissingMethodException exception, String name) {
+        if (!name.equals(exception.getMethod())) {
+            throw exception;
+        }
+    }
+
+    private static void rethrowIfNotMissing(MissingPropertyException exception, String name) {
+        if (!name.equals(exception.getProperty())) {
+            throw exception;
+        }
+    }
+
+}
@@ -14,7 +14,7 @@ public class IntegrationTestsPlugin extends AbstractSettingsAwarePlugin {
     protected void applyToProject(Project project) {
         project.getPluginManager().apply(TestSourceSetsPlugin.class);
         var testSourceSets = getExtension(project, TestSourceSetContainer.class);
-        testSourceSets.create(INTEGRATION_SOURCE_SET_NAME);
+        testSourceSets.maybeCreate(INTEGRATION_SOURCE_SET_NAME);
     }
 
 }
@@ -0,0 +1,60 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import javax.inject.Inject;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.IgnoreEmptyDirectories;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.SkipWhenEmpty;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkerExecutor;
+
+/**
+ * Instruments classes with JaCoCo offline instrumentation.
+ *
+ * <p>Class files are instrumented, all other files are copied as is.
+ */
+@CacheableTask
+public abstract class JacocoInstrumentClasses extends DefaultTask {
+
+    @InputFiles
+    @SkipWhenEmpty
+    @IgnoreEmptyDirectories
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getClassesDirs();
+
+    @Classpath
+    public abstract ConfigurableFileCollection getJacocoClasspath();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getDestinationDir();
+
+
+    @TaskAction
+    public void execute() {
+        getFileSystemOperations().delete(spec -> spec.delete(getDestinationDir()));
+
+        var workQueue = getWorkerExecutor().classLoaderIsolation(spec ->
+            spec.getClasspath().from(getJacocoClasspath())
+        );
+        workQueue.submit(JacocoInstrumentClassesAction.class, params -> {
+            params.getClassesDirs().from(getClassesDirs());
+            params.getDestinationDir().set(getDestinationDir());
+        });
+    }
+
+
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor();
+
+    @Inject
+    protected abstract FileSystemOperations getFileSystemOperations();
+
+}
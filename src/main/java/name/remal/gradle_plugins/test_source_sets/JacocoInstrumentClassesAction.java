@@ -0,0 +1,87 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.walk;
+import static java.nio.file.Files.write;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import lombok.SneakyThrows;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+/**
+ * JaCoCo classes are available only in the isolated class loader of the worker,
+ * so they are accessed via reflection.
+ */
+public abstract class JacocoInstrumentClassesAction implements WorkAction<JacocoInstrumentClassesAction.Params> {
+
+    public interface Params extends WorkParameters {
+
+        ConfigurableFileCollection getClassesDirs();
+
+        DirectoryProperty getDestinationDir();
+
+    }
+
+
+    @Override
+    @SneakyThrows
+    public void execute() {
+        var generatorInterface = Class.forName("org.jacoco.core.runtime.IExecutionDataAccessorGenerator");
+        var generatorClass = Class.forName("org.jacoco.core.runtime.OfflineInstrumentationAccessGenerator");
+        var instrumenterClass = Class.forName("org.jacoco.core.instr.Instrumenter");
+        var instrumenter = instrumenterClass.getConstructor(generatorInterface)
+            .newInstance(generatorClass.getConstructor().newInstance());
+        var instrumentMethod = instrumenterClass.getMethod("instrument", InputStream.class, String.class);
+
+        var destinationDir = getParameters().getDestinationDir().get().getAsFile().toPath();
+        for (var classesDirFile : getParameters().getClassesDirs().getFiles()) {
+            var classesDir = classesDirFile.toPath();
+            if (!isDirectory(classesDir)) {
+                continue;
+            }
+
+            final List<Path> files;
+            try (var paths = walk(classesDir)) {
+                files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+
+            for (var file : files) {
+                var relativePath = classesDir.relativize(file);
+                var targetFile = destinationDir.resolve(relativePath.toString());
+                createDirectories(targetFile.getParent());
+
+                if (isInstrumentable(relativePath)) {
+                    write(targetFile, instrument(instrumenter, instrumentMethod, file, relativePath));
+                } else {
+                    Files.copy(file, targetFile, REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private static boolean isInstrumentable(Path relativePath) {
+        var fileName = relativePath.getFileName().toString();
+        return fileName.endsWith(".class")
+            && !fileName.equals("module-info.class")
+            && !relativePath.startsWith("META-INF");
+    }
+
+    @SneakyThrows
+    private static byte[] instrument(Object instrumenter, Method instrumentMethod, Path file, Path relativePath) {
+        try (var in = newInputStream(file)) {
+            return (byte[]) instrumentMethod.invoke(instrumenter, in, relativePath.toString());
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.lang.invoke.MethodType.methodType;
+import static lombok.AccessLevel.PRIVATE;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Optional;
+import lombok.NoArgsConstructor;
+import lombok.SneakyThrows;
+import org.gradle.api.NamedDomainObjectContainer;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Accessors of Kotlin Gradle plugin members.
+ *
+ * <p>Kotlin Gradle plugin classes are not available at compile time, so the members are found via reflection.
+ * Method handles are resolved once per class and shared by all projects of the build.
+ */
+@NoArgsConstructor(access = PRIVATE)
+abstract class KotlinGradlePluginAccessors {
+
+    private static final ClassValue<Optional<MethodHandle>> GET_TARGET = new ClassValue<>() {
+        @Override
+        protected Optional<MethodHandle> computeValue(Class<?> type) {
+            return findMethodHandle(type, "getTarget", Object.class, null);
+        }
+    };
+
+    private static final ClassValue<Optional<MethodHandle>> GET_COMPILATIONS = new ClassValue<>() {
+        @Override
+        protected Optional<MethodHandle> computeValue(Class<?> type) {
+            return findMethodHandle(type, "getCompilations", NamedDomainObjectContainer.class, null);
+        }
+    };
+
+    private static final ClassValue<Optional<MethodHandle>> ASSOCIATE_WITH = new ClassValue<>() {
+        @Override
+        protected Optional<MethodHandle> computeValue(Class<?> type) {
+            return findMethodHandle(type, "associateWith", void.class, type);
+        }
+    };
+
+
+    /**
+     * Returns {@code getTarget()} accessor of Kotlin extension class, or {@code null} if there is no such method.
+     */
+    public static @Nullable MethodHandle findGetTarget(Class<?> kotlinExtensionClass) {
+        return GET_TARGET.get(kotlinExtensionClass).orElse(null);
+    }
+
+    /**
+     * Returns {@code getCompilations()} accessor of Kotlin target class, or {@code null} if there is no such method.
+     */
+    public static @Nullable MethodHandle findGetCompilations(Class<?> targetClass) {
+        return GET_COMPILATIONS.get(targetClass).orElse(null);
+    }
+
+    /**
+     * Returns {@code associateWith(compilation)} accessor of Kotlin compilation class,
+     * or {@code null} if there is no such method.
+     */
+    public static @Nullable MethodHandle findAssociateWith(Class<?> compilationClass) {
+        return ASSOCIATE_WITH.get(compilationClass).orElse(null);
+    }
+
+    @Nullable
+    @SneakyThrows
+    public static Object invokeGetter(MethodHandle getter, Object target) {
+        return (Object) getter.invokeExact(target);
+    }
+
+    @SneakyThrows
+    public static void invokeAssociateWith(MethodHandle associateWith, Object compilation, Object other) {
+        associateWith.invokeExact(compilation, other);
+    }
+
+
+    private static Optional<MethodHandle> findMethodHandle(
+        Class<?> type,
+        String name,
+        Class<?> returnType,
+        @Nullable Class<?> paramType
+    ) {
+        var paramCount = paramType != null ? 1 : 0;
+        for (var method : type.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())
+                || !method.getName().equals(name)
+                || method.getParameterCount() != paramCount
+                || (paramType != null && !method.getParameterTypes()[0].isAssignableFrom(paramType))
+            ) {
+                continue;
+            }
+
+            if (returnType == void.class) {
+                if (method.getReturnType() != void.class) {
+                    continue;
+                }
+            } else if (!returnType.isAssignableFrom(method.getReturnType())) {
+                continue;
+            }
+
+            return Optional.of(toMethodHandle(method));
+        }
+
+        return Optional.empty();
+    }
+
+    @SneakyThrows
+    private static MethodHandle toMethodHandle(Method method) {
+        method.setAccessible(true);
+        var handle = MethodHandles.lookup().unreflect(method);
+        if (method.getReturnType() == void.class) {
+            return handle.asType(methodType(void.class, Object.class, Object.class));
+        } else {
+            return handle.asType(methodType(Object.class, Object.class));
+        }
+    }
+
+}
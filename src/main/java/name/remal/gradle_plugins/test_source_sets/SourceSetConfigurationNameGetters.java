@@ -0,0 +1,70 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.lang.invoke.MethodType.methodType;
+import static java.util.stream.Collectors.toUnmodifiableList;
+import static lombok.AccessLevel.PRIVATE;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import lombok.NoArgsConstructor;
+import lombok.SneakyThrows;
+import org.gradle.api.tasks.SourceSet;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Accessors of all {@code get*ConfigurationName()} methods of {@link SourceSet}.
+ *
+ * <p>The accessors are generated with {@link LambdaMetafactory} once per class loader,
+ * so reading configuration names doesn't involve reflective calls.
+ */
+@NoArgsConstructor(access = PRIVATE)
+abstract class SourceSetConfigurationNameGetters {
+
+    private static final Pattern GET_CONFIGURATION_NAME_METHOD_NAME = Pattern.compile(
+        "^get[A-Z].*[a-z]ConfigurationName$"
+    );
+
+    private static final List<Function<SourceSet, @Nullable String>> GETTERS = Stream.of(SourceSet.class.getMethods())
+        .filter(it -> GET_CONFIGURATION_NAME_METHOD_NAME.matcher(it.getName()).matches())
+        .filter(it -> it.getParameterCount() == 0)
+        .filter(it -> it.getReturnType() == String.class)
+        .sorted(Comparator.comparing(Method::getName))
+        .map(SourceSetConfigurationNameGetters::createGetter)
+        .collect(toUnmodifiableList());
+
+    /**
+     * Returns configuration names of the source set.
+     *
+     * <p>Elements of the returned arrays are aligned for all source sets,
+     * so the same index always corresponds to the same {@code get*ConfigurationName()} method.
+     */
+    public static @Nullable String[] getConfigurationNames(SourceSet sourceSet) {
+        var names = new String[GETTERS.size()];
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = GETTERS.get(i).apply(sourceSet);
+        }
+        return names;
+    }
+
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    private static Function<SourceSet, @Nullable String> createGetter(Method method) {
+        var lookup = MethodHandles.lookup();
+        var callSite = LambdaMetafactory.metafactory(
+            lookup,
+            "apply",
+            methodType(Function.class),
+            methodType(Object.class, Object.class),
+            lookup.unreflect(method),
+            methodType(String.class, SourceSet.class)
+        );
+        return (Function<SourceSet, @Nullable String>) callSite.getTarget().invokeExact();
+    }
+
+}
@@ -0,0 +1,48 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.process.CommandLineArgumentProvider;
+
+/**
+ * Passes a system property to a forked JVM.
+ *
+ * <p>The value is resolved only when the JVM is started, and it is not considered as a task input,
+ * so absolute paths don't break build cache relocatability. The property is not passed if the value is missing.
+ */
+@RequiredArgsConstructor
+class SystemPropertyArgumentProvider implements CommandLineArgumentProvider {
+
+    private final String name;
+
+    private final Provider<String> value;
+
+    @Input
+    public String getName() {
+        return name;
+    }
+
+    @Internal
+    public Provider<String> getValue() {
+        return value;
+    }
+
+    @Input
+    public boolean isPresent() {
+        return value.isPresent();
+    }
+
+    @Override
+    public Iterable<String> asArguments() {
+        var currentValue = value.getOrNull();
+        if (currentValue == null) {
+            return List.of();
+        }
+
+        return List.of("-D" + name + '=' + currentValue);
+    }
+
+}
@@ -0,0 +1,43 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static lombok.AccessLevel.PRIVATE;
+
+import lombok.NoArgsConstructor;
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.UnknownDomainObjectException;
+import org.gradle.api.tasks.TaskContainer;
+import org.gradle.api.tasks.TaskProvider;
+
+@NoArgsConstructor(access = PRIVATE)
+abstract class TaskRegistrationUtils {
+
+    /**
+     * Checks if a task with the given name is registered.
+     *
+     * <p>Unlike {@code tasks.getNames().contains(name)}, it doesn't build a sorted set of all task names,
+     * so the cost doesn't depend on the number of tasks in the project. The task is not realized.
+     */
+    public static boolean isTaskRegistered(TaskContainer tasks, String name) {
+        try {
+            tasks.named(name);
+            return true;
+        } catch (UnknownDomainObjectException ignored) {
+            return false;
+        }
+    }
+
+    public static <T extends Task> TaskProvider<T> registerIfAbsent(
+        TaskContainer tasks,
+        String name,
+        Class<T> type,
+        Action<? super T> configurationAction
+    ) {
+        if (isTaskRegistered(tasks, name)) {
+            return tasks.named(name, type);
+        }
+
+        return tasks.register(name, type, configurationAction);
+    }
+
+}
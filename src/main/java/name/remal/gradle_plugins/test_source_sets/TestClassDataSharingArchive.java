@@ -0,0 +1,167 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.readAllLines;
+import static java.nio.file.Files.write;
+import static name.remal.gradle_plugins.test_source_sets.ClassDependenciesParser.parseClassDependencies;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
+import javax.inject.Inject;
+import lombok.CustomLog;
+import lombok.SneakyThrows;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Nested;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.jvm.toolchain.JavaLauncher;
+import org.gradle.process.ExecOperations;
+
+/**
+ * Generates a Class Data Sharing archive of JDK classes referenced by classes of the classpath.
+ *
+ * <p>Gradle test workers load test classes from a classpath starting with Gradle's worker jar and with classes dirs.
+ * A static archive can't include classes of such a classpath, so only JDK classes are archived.
+ * The JDK's default archive includes only classes needed to start the JVM,
+ * and the generated archive includes also all JDK classes used by libraries of the classpath.
+ *
+ * <p>The archive can be used only by the same JVM, so it's generated by the JVM executing the tests.
+ * The archive is not generated for JVMs older than 11.
+ */
+@CacheableTask
+@CustomLog
+public abstract class TestClassDataSharingArchive extends DefaultTask {
+
+    private static final List<String> JDK_PACKAGE_PREFIXES = List.of(
+        "java.",
+        "javax.",
+        "jdk.",
+        "sun.",
+        "com.sun.",
+        "org.w3c.dom.",
+        "org.xml.sax."
+    );
+
+    @Classpath
+    public abstract ConfigurableFileCollection getClasspath();
+
+    @Nested
+    public abstract Property<JavaLauncher> getJavaLauncher();
+
+    @OutputFile
+    public abstract RegularFileProperty getArchiveFile();
+
+    @Inject
+    protected abstract ExecOperations getExecOperations();
+
+
+    @TaskAction
+    @SneakyThrows
+    public void execute() {
+        var archivePath = getArchiveFile().get().getAsFile().toPath();
+        deleteIfExists(archivePath);
+
+        var javaLauncher = getJavaLauncher().get();
+        var javaVersion = javaLauncher.getMetadata().getLanguageVersion().asInt();
+        if (javaVersion < 11) {
+            logger.info("Class Data Sharing archive is not generated for Java {}", javaVersion);
+            return;
+        }
+
+        Set<String> classList = new LinkedHashSet<>();
+        var defaultClassList = javaLauncher.getMetadata().getInstallationPath().file("lib/classlist").getAsFile();
+        if (defaultClassList.isFile()) {
+            classList.addAll(readAllLines(defaultClassList.toPath(), UTF_8));
+        }
+        getReferencedJdkClassNames(getClasspath().getFiles()).stream()
+            .map(className -> className.replace('.', '/'))
+            .forEach(classList::add);
+
+        var tempDir = getTemporaryDir().toPath();
+        var classListPath = tempDir.resolve("classlist");
+        write(classListPath, classList, UTF_8);
+
+        createDirectories(archivePath.getParent());
+        try (var output = new FileOutputStream(tempDir.resolve("dump.log").toFile())) {
+            getExecOperations().exec(spec -> {
+                spec.setExecutable(javaLauncher.getExecutablePath().getAsFile());
+                spec.args(
+                    "-Xshare:dump",
+                    "-XX:SharedClassListFile=" + classListPath,
+                    "-XX:SharedArchiveFile=" + archivePath
+                );
+                spec.setStandardOutput(output);
+                spec.setErrorOutput(output);
+            });
+        }
+
+        if (!isRegularFile(archivePath)) {
+            logger.warn("Class Data Sharing archive was not generated, see {}", tempDir.resolve("dump.log"));
+        }
+    }
+
+    /**
+     * Classes which can't be loaded by the JVM are skipped when the archive is dumped.
+     */
+    @SneakyThrows
+    static Set<String> getReferencedJdkClassNames(Collection<File> classpath) {
+        Set<String> classNames = new LinkedHashSet<>();
+        for (var file : classpath) {
+            if (file.isDirectory()) {
+                try (var paths = Files.walk(file.toPath())) {
+                    var classFiles = paths
+                        .filter(path -> path.getFileName().toString().endsWith(".class"))
+                        .filter(Files::isRegularFile)
+                        .collect(Collectors.toList());
+                    for (var classFile : classFiles) {
+                        addReferencedJdkClassNames(readAllBytes(classFile), classNames);
+                    }
+                }
+
+            } else if (file.isFile()) {
+                try (var zipFile = new ZipFile(file)) {
+                    var entries = zipFile.entries();
+                    while (entries.hasMoreElements()) {
+                        var entry = entries.nextElement();
+                        if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                            try (var in = zipFile.getInputStream(entry)) {
+                                addReferencedJdkClassNames(in.readAllBytes(), classNames);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return classNames;
+    }
+
+    private static void addReferencedJdkClassNames(byte[] classBytes, Set<String> classNames) {
+        final Set<String> dependencies;
+        try {
+            dependencies = parseClassDependencies(classBytes);
+        } catch (Exception e) {
+            return;
+        }
+
+        dependencies.stream()
+            .filter(className -> JDK_PACKAGE_PREFIXES.stream().anyMatch(className::startsWith))
+            .forEach(classNames::add);
+    }
+
+}
@@ -0,0 +1,235 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.copy;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.readAllLines;
+import static java.nio.file.Files.readString;
+import static java.nio.file.Files.write;
+import static java.nio.file.Files.writeString;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static lombok.AccessLevel.PRIVATE;
+import static name.remal.gradle_plugins.test_source_sets.AffectedTestsAnalyzer.hash;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import lombok.NoArgsConstructor;
+import lombok.SneakyThrows;
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.tasks.testing.Test;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Caches results of passed test classes by keys calculated by {@link TestClassResultsKeys}.
+ *
+ * <p>Every cached test class has its own dir with the key and JUnit XML reports of the class and its nested classes.
+ * Test classes with the same key as the cached one are excluded from execution,
+ * and their cached reports are copied to the JUnit XML reports dir of the test task.
+ *
+ * <p>Keys of test classes are combined with the key of the test task, see {@link #computeTestTaskKey(Test)},
+ * so results are reused only by test tasks executing the tests the same way.
+ */
+@NoArgsConstructor(access = PRIVATE)
+abstract class TestClassResultsCache {
+
+    private static final String KEY_FILE_NAME = "key.txt";
+
+    @SneakyThrows
+    public static void writeKeys(File keysFile, Map<String, String> keys) {
+        List<String> lines = new ArrayList<>(keys.size());
+        keys.forEach((className, key) -> lines.add(className + '\t' + key));
+        write(keysFile.toPath(), lines, UTF_8);
+    }
+
+    @SneakyThrows
+    public static Map<String, String> readKeys(File keysFile) {
+        Map<String, String> keys = new TreeMap<>();
+        for (var line : readAllLines(keysFile.toPath(), UTF_8)) {
+            var parts = line.split("\t", 2);
+            if (parts.length == 2) {
+                keys.put(parts[0], parts[1]);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns keys of test classes combined with the key of the test task.
+     */
+    static Map<String, String> readKeys(File keysFile, Test task) {
+        var testTaskKey = computeTestTaskKey(task);
+        Map<String, String> keys = new TreeMap<>();
+        readKeys(keysFile).forEach((className, key) ->
+            keys.put(className, hash((key + '\n' + testTaskKey).getBytes(UTF_8)))
+        );
+        return keys;
+    }
+
+    /**
+     * Returns a key of settings of the test task which can affect results of the tests:
+     * JVM arguments (including system properties), environment variables, and Java installation.
+     */
+    static String computeTestTaskKey(Test task) {
+        var key = new StringBuilder();
+        task.getAllJvmArgs().forEach(arg ->
+            key.append("jvmArg:").append(arg).append('\n')
+        );
+        new TreeMap<>(task.getEnvironment()).forEach((name, value) ->
+            key.append("env:").append(name).append('=').append(value).append('\n')
+        );
+
+        var javaLauncher = task.getJavaLauncher().getOrNull();
+        if (javaLauncher != null) {
+            var metadata = javaLauncher.getMetadata();
+            key.append("java:").append(metadata.getLanguageVersion())
+                .append(':').append(metadata.getInstallationPath().getAsFile().getAbsolutePath())
+                .append('\n');
+        } else {
+            key.append("java:").append(task.getExecutable()).append('\n');
+        }
+
+        return hash(key.toString().getBytes(UTF_8));
+    }
+
+    @SneakyThrows
+    private static boolean isCached(Path cacheDir, String className, String key) {
+        var keyFile = cacheDir.resolve(className).resolve(KEY_FILE_NAME);
+        return isRegularFile(keyFile) && readString(keyFile, UTF_8).equals(key);
+    }
+
+    @SneakyThrows
+    private static List<Path> findReports(Path reportsDir, String className) {
+        List<Path> reports = new ArrayList<>();
+        var files = reportsDir.toFile().listFiles((dir, name) ->
+            name.equals("TEST-" + className + ".xml")
+                || (name.startsWith("TEST-" + className + "$") && name.endsWith(".xml"))
+        );
+        if (files != null) {
+            for (var file : files) {
+                reports.add(file.toPath());
+            }
+        }
+        return reports;
+    }
+
+    @SneakyThrows
+    private static boolean isPassed(Path report) {
+        var factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try (var in = Files.newInputStream(report)) {
+            var reader = factory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                        return reader.getLocalName().equals("testsuite")
+                            && "0".equals(reader.getAttributeValue(null, "failures"))
+                            && "0".equals(reader.getAttributeValue(null, "errors"));
+                    }
+                }
+                return false;
+            } finally {
+                reader.close();
+            }
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Caches results of passed test classes, and replays cached results of test classes without reports.
+     *
+     * <p>For a shard task, only results of test classes of the shard are replayed.
+     *
+     * @param keys keys of test classes combined with the key of the test task, see {@link #readKeys(File, Test)}
+     */
+    @SneakyThrows
+    public static void storeTestClassResults(
+        Map<String, String> keys,
+        File cacheDir,
+        @Nullable File shardFile,
+        File reportsDir
+    ) {
+        var shardClassNames = shardFile != null ? new HashSet<>(readAllLines(shardFile.toPath(), UTF_8)) : null;
+        var reportsPath = createDirectories(reportsDir.toPath());
+        for (var entry : keys.entrySet()) {
+            var className = entry.getKey();
+            var key = entry.getValue();
+            var classCacheDir = cacheDir.toPath().resolve(className);
+            var reports = findReports(reportsPath, className);
+            if (reports.isEmpty()) {
+                if ((shardClassNames == null || shardClassNames.contains(className))
+                    && isCached(cacheDir.toPath(), className, key)
+                ) {
+                    for (var cachedReport : findReports(classCacheDir, className)) {
+                        copy(cachedReport, reportsPath.resolve(cachedReport.getFileName()), REPLACE_EXISTING);
+                    }
+                }
+                continue;
+            }
+
+            if (reports.stream().allMatch(TestClassResultsCache::isPassed)) {
+                createDirectories(classCacheDir);
+                for (var cachedReport : findReports(classCacheDir, className)) {
+                    Files.delete(cachedReport);
+                }
+                for (var report : reports) {
+                    copy(report, classCacheDir.resolve(report.getFileName()), REPLACE_EXISTING);
+                }
+                writeString(classCacheDir.resolve(KEY_FILE_NAME), key, UTF_8);
+            }
+        }
+    }
+
+
+    /**
+     * Excludes test classes with cached results from execution.
+     *
+     * <p>Keys of test classes combined with the key of the test task are written to a file,
+     * to be used by {@link TestClassResultsStore} task after the test task.
+     */
+    static class ExcludeCachedTestClasses implements Action<Task> {
+
+        private final File keysFile;
+
+        private final File cacheDir;
+
+        private final File testTaskKeysFile;
+
+        public ExcludeCachedTestClasses(File keysFile, File cacheDir, File testTaskKeysFile) {
+            this.keysFile = keysFile;
+            this.cacheDir = cacheDir;
+            this.testTaskKeysFile = testTaskKeysFile;
+        }
+
+        @Override
+        @SneakyThrows
+        public void execute(Task task) {
+            var test = (Test) task;
+            var filter = test.getFilter();
+            var keys = readKeys(keysFile, test);
+            keys.forEach((className, key) -> {
+                if (isCached(cacheDir.toPath(), className, key)) {
+                    filter.excludeTestsMatching(className);
+                    filter.excludeTestsMatching(className + "$*");
+                }
+            });
+
+            createDirectories(testTaskKeysFile.getParentFile().toPath());
+            writeKeys(testTaskKeysFile, keys);
+        }
+
+    }
+
+}
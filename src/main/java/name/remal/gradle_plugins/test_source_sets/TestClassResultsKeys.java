@@ -0,0 +1,55 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static name.remal.gradle_plugins.test_source_sets.AffectedTestsAnalyzer.computeTestClassKeys;
+import static name.remal.gradle_plugins.test_source_sets.AffectedTestsAnalyzer.index;
+
+import name.remal.gradle_plugins.test_source_sets.AffectedTestsAnalyzer.State;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.IgnoreEmptyDirectories;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Calculates keys of test classes for {@link TestClassResultsCache}.
+ *
+ * <p>A key depends on the bytecode of the test class, of all classes it transitively depends on,
+ * and on resources and jars of the classpath.
+ */
+public abstract class TestClassResultsKeys extends DefaultTask {
+
+    @InputFiles
+    @IgnoreEmptyDirectories
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getTestClassesDirs();
+
+    @Classpath
+    public abstract ConfigurableFileCollection getClasspath();
+
+    /**
+     * The index of the previous execution, so only changed classes are parsed.
+     */
+    @Internal
+    public abstract RegularFileProperty getIndexFile();
+
+    @OutputFile
+    public abstract RegularFileProperty getKeysFile();
+
+
+    @TaskAction
+    public void execute() {
+        var indexFile = getIndexFile().get().getAsFile();
+        var state = index(getClasspath().plus(getTestClassesDirs()), State.read(indexFile));
+        state.write(indexFile);
+
+        var keys = computeTestClassKeys(getTestClassesDirs(), state);
+        TestClassResultsCache.writeKeys(getKeysFile().get().getAsFile(), keys);
+    }
+
+}
@@ -0,0 +1,72 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.file.Files.deleteIfExists;
+import static name.remal.gradle_plugins.test_source_sets.TestClassResultsCache.readKeys;
+import static name.remal.gradle_plugins.test_source_sets.TestClassResultsCache.storeTestClassResults;
+
+import lombok.SneakyThrows;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Caches results of passed test classes of a test task, and replays cached results of excluded test classes,
+ * see {@link TestClassResultsCache}.
+ *
+ * <p>It finalizes the test task, so it's executed even if some tests fail,
+ * but not if the test task is up-to-date or skipped.
+ * JUnit XML reports are written after all tests are executed, so it can't be done by a test listener.
+ */
+public abstract class TestClassResultsStore extends DefaultTask {
+
+    /**
+     * Keys of test classes combined with the key of the test task, written when the test task is executed.
+     * The file is deleted after the results are stored.
+     */
+    @Internal
+    public abstract RegularFileProperty getTestTaskKeysFile();
+
+    @Internal
+    public abstract DirectoryProperty getCacheDir();
+
+    /**
+     * The file with test classes of the shard, if the test task is a shard task.
+     */
+    @Internal
+    public abstract RegularFileProperty getShardFile();
+
+    @Internal
+    public abstract DirectoryProperty getJunitXmlReportsDir();
+
+    @Internal
+    public abstract Property<Boolean> getJunitXmlReportsRequired();
+
+
+    @TaskAction
+    @SneakyThrows
+    public void execute() {
+        var testTaskKeysFile = getTestTaskKeysFile().get().getAsFile();
+        if (!testTaskKeysFile.isFile()) {
+            setDidWork(false);
+            return;
+        }
+
+        try {
+            if (getJunitXmlReportsRequired().getOrElse(true)) {
+                var shardFile = getShardFile().getOrNull();
+                storeTestClassResults(
+                    readKeys(testTaskKeysFile),
+                    getCacheDir().get().getAsFile(),
+                    shardFile != null ? shardFile.getAsFile() : null,
+                    getJunitXmlReportsDir().get().getAsFile()
+                );
+            }
+        } finally {
+            deleteIfExists(testTaskKeysFile.toPath());
+        }
+    }
+
+}
@@ -0,0 +1,25 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Shared by test tasks of all test source sets that use Gradle TestKit.
+ *
+ * <p>The number of such test tasks executed in parallel is limited by
+ * {@link org.gradle.api.services.BuildServiceSpec#getMaxParallelUsages()},
+ * so the number of TestKit daemons running at the same time is bounded.
+ */
+public abstract class TestKitBuildService implements BuildService<TestKitBuildService.Params> {
+
+    public interface Params extends BuildServiceParameters {
+
+        /**
+         * TestKit dir shared by all test tasks, so Gradle distributions, caches and daemons are reused.
+         */
+        DirectoryProperty getTestKitDir();
+
+    }
+
+}
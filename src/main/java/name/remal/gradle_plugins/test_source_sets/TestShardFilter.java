@@ -0,0 +1,65 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.readAllLines;
+
+import java.io.File;
+import lombok.SneakyThrows;
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.api.tasks.testing.TestFilter;
+
+/**
+ * Restricts a shard {@link Test} task to test classes listed in the shard file written by {@link TestShardsPlan}.
+ *
+ * <p>The shard file is an input of the task, so the filter doesn't have to be an input.
+ */
+class TestShardFilter implements Action<Task> {
+
+    private final File shardFile;
+
+    public TestShardFilter(File shardFile) {
+        this.shardFile = shardFile;
+    }
+
+    @Override
+    @SneakyThrows
+    public void execute(Task task) {
+        includeTestClasses(((Test) task).getFilter(), readAllLines(shardFile.toPath(), UTF_8));
+    }
+
+    /**
+     * Includes the test classes with their nested classes.
+     */
+    static void includeTestClasses(TestFilter filter, Iterable<String> classNames) {
+        for (var line : classNames) {
+            var className = line.trim();
+            if (!className.isEmpty()) {
+                filter.includeTestsMatching(className);
+                filter.includeTestsMatching(className + "$*");
+            }
+        }
+    }
+
+
+    /**
+     * Skips the shard task if there are no test classes in the shard.
+     */
+    static class IsNotEmpty implements Spec<Task> {
+
+        private final File shardFile;
+
+        public IsNotEmpty(File shardFile) {
+            this.shardFile = shardFile;
+        }
+
+        @Override
+        public boolean isSatisfiedBy(Task task) {
+            return shardFile.length() > 0;
+        }
+
+    }
+
+}
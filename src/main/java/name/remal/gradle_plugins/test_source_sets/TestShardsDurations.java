@@ -0,0 +1,44 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static name.remal.gradle_plugins.test_source_sets.TestShardsPlanner.readDurations;
+import static name.remal.gradle_plugins.test_source_sets.TestShardsPlanner.readDurationsFile;
+import static name.remal.gradle_plugins.test_source_sets.TestShardsPlanner.writeDurationsFile;
+
+import java.util.Map;
+import java.util.TreeMap;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Writes durations of test classes from JUnit XML reports of previous runs to the durations file,
+ * used by {@link TestShardsPlan}.
+ *
+ * <p>The durations file is supposed to be committed, so all machines plan shards the same way.
+ * Durations of test classes without reports are kept.
+ *
+ * <p>The task has no outputs, so it's always executed.
+ */
+public abstract class TestShardsDurations extends DefaultTask {
+
+    @Internal
+    public abstract ConfigurableFileCollection getTestResultsDirs();
+
+    @Internal
+    public abstract RegularFileProperty getDurationsFile();
+
+
+    @TaskAction
+    public void execute() {
+        var durationsFile = getDurationsFile().get().getAsFile();
+        Map<String, Double> durations = new TreeMap<>();
+        if (durationsFile.isFile()) {
+            durations.putAll(readDurationsFile(durationsFile));
+        }
+        durations.putAll(readDurations(getTestResultsDirs()));
+        writeDurationsFile(durationsFile, durations);
+    }
+
+}
@@ -0,0 +1,85 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.write;
+import static name.remal.gradle_plugins.test_source_sets.TestShardsPlanner.findTopLevelClassNames;
+import static name.remal.gradle_plugins.test_source_sets.TestShardsPlanner.planShards;
+import static name.remal.gradle_plugins.test_source_sets.TestShardsPlanner.planShardsByHash;
+import static name.remal.gradle_plugins.test_source_sets.TestShardsPlanner.readDurationsFile;
+
+import java.io.File;
+import javax.inject.Inject;
+import lombok.SneakyThrows;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.IgnoreEmptyDirectories;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Assigns test classes to shards by durations from the durations file (see {@link TestShardsDurations}).
+ * If there is no durations file, test classes are assigned by hashes of their names.
+ *
+ * <p>For each shard, a file with names of test classes is written to the output dir
+ * (see {@link #getShardFileName(int)}).
+ *
+ * <p>The plan depends only on the task inputs, so shards executed on different machines
+ * get the same assignment, and every test class is executed by exactly one shard.
+ */
+@CacheableTask
+public abstract class TestShardsPlan extends DefaultTask {
+
+    @Input
+    public abstract Property<Integer> getShards();
+
+    @InputFiles
+    @IgnoreEmptyDirectories
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getTestClassesDirs();
+
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getDurationsFile();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDir();
+
+
+    @TaskAction
+    @SneakyThrows
+    public void execute() {
+        var outputDir = getOutputDir().get().getAsFile();
+        getFileSystemOperations().delete(spec -> spec.delete(outputDir));
+        outputDir.mkdirs();
+
+        var classNames = findTopLevelClassNames(getTestClassesDirs());
+        var shards = getDurationsFile().isPresent()
+            ? planShards(classNames, readDurationsFile(getDurationsFile().get().getAsFile()), getShards().get())
+            : planShardsByHash(classNames, getShards().get());
+        for (int i = 0; i < shards.size(); ++i) {
+            var shardFile = new File(outputDir, getShardFileName(i + 1));
+            write(shardFile.toPath(), shards.get(i), UTF_8);
+        }
+    }
+
+    public static String getShardFileName(int shardNumber) {
+        return "shard" + shardNumber + ".txt";
+    }
+
+
+    @Inject
+    protected abstract FileSystemOperations getFileSystemOperations();
+
+}
@@ -0,0 +1,266 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.Files.walk;
+import static lombok.AccessLevel.PRIVATE;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import lombok.NoArgsConstructor;
+import lombok.SneakyThrows;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Splits test classes into shards with about the same total duration.
+ *
+ * <p>Durations are taken from a durations file, written from JUnit XML reports of previous runs.
+ * Classes without known duration are considered taking the average duration of known classes.
+ * Classes are assigned longest-first, each to the shard with the smallest total duration so far.
+ *
+ * <p>Without durations, classes are assigned by hashes of their names,
+ * so adding or removing a class doesn't move other classes to other shards.
+ */
+@NoArgsConstructor(access = PRIVATE)
+abstract class TestShardsPlanner {
+
+    private static final double DEFAULT_DURATION_SECONDS = 1.0;
+
+    public static List<List<String>> planShards(
+        Collection<String> classNames,
+        Map<String, Double> durations,
+        int shardsCount
+    ) {
+        var averageDuration = classNames.stream()
+            .map(durations::get)
+            .filter(Objects::nonNull)
+            .mapToDouble(Double::doubleValue)
+            .average()
+            .orElse(DEFAULT_DURATION_SECONDS);
+
+        var sortedClassNames = new ArrayList<>(new TreeSet<>(classNames));
+        sortedClassNames.sort(Comparator.comparingDouble(
+            (String className) -> durations.getOrDefault(className, averageDuration)
+        ).reversed());
+
+        List<List<String>> shards = new ArrayList<>(shardsCount);
+        var shardsQueue = new PriorityQueue<Shard>();
+        for (int i = 0; i < shardsCount; ++i) {
+            var shard = new Shard(i);
+            shards.add(shard.classNames);
+            shardsQueue.add(shard);
+        }
+
+        for (var className : sortedClassNames) {
+            var shard = shardsQueue.remove();
+            shard.classNames.add(className);
+            shard.totalDuration += durations.getOrDefault(className, averageDuration);
+            shardsQueue.add(shard);
+        }
+
+        return shards;
+    }
+
+    public static List<List<String>> planShardsByHash(Collection<String> classNames, int shardsCount) {
+        List<List<String>> shards = new ArrayList<>(shardsCount);
+        for (int i = 0; i < shardsCount; ++i) {
+            shards.add(new ArrayList<>());
+        }
+
+        for (var className : new TreeSet<>(classNames)) {
+            shards.get(Math.floorMod(className.hashCode(), shardsCount)).add(className);
+        }
+
+        return shards;
+    }
+
+    private static class Shard implements Comparable<Shard> {
+
+        private final int index;
+
+        private final List<String> classNames = new ArrayList<>();
+
+        private double totalDuration;
+
+        private Shard(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int compareTo(Shard other) {
+            var result = Double.compare(totalDuration, other.totalDuration);
+            if (result == 0) {
+                result = Integer.compare(index, other.index);
+            }
+            return result;
+        }
+
+    }
+
+
+    /**
+     * Returns names of top-level classes in the classes dirs.
+     */
+    @SneakyThrows
+    public static List<String> findTopLevelClassNames(Iterable<File> classesDirs) {
+        var classNames = new TreeSet<String>();
+        for (var classesDirFile : classesDirs) {
+            var classesDir = classesDirFile.toPath();
+            if (!isDirectory(classesDir)) {
+                continue;
+            }
+
+            final List<Path> classFiles;
+            try (var paths = walk(classesDir)) {
+                classFiles = paths
+                    .filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(".class"))
+                    .collect(Collectors.toList());
+            }
+
+            for (var classFile : classFiles) {
+                var fileName = classFile.getFileName().toString();
+                var simpleName = fileName.substring(0, fileName.length() - ".class".length());
+                if (simpleName.contains("$")
+                    || simpleName.equals("module-info")
+                    || simpleName.equals("package-info")
+                ) {
+                    continue;
+                }
+
+                var relativePath = classesDir.relativize(classFile).toString();
+                var className = relativePath.substring(0, relativePath.length() - ".class".length())
+                    .replace(File.separatorChar, '.');
+                classNames.add(className);
+            }
+        }
+        return new ArrayList<>(classNames);
+    }
+
+
+    /**
+     * Reads durations of test classes from {@code TEST-*.xml} JUnit XML reports.
+     * If there are several reports for the same class, the longest duration is taken.
+     */
+    @SneakyThrows
+    public static Map<String, Double> readDurations(Iterable<File> testResultsDirs) {
+        Map<String, Double> durations = new LinkedHashMap<>();
+        for (var testResultsDirFile : testResultsDirs) {
+            var files = testResultsDirFile.listFiles((dir, name) -> name.startsWith("TEST-") && name.endsWith(".xml"));
+            if (files == null) {
+                continue;
+            }
+
+            for (var file : files) {
+                try (var in = Files.newInputStream(file.toPath())) {
+                    var suite = readTestSuite(in);
+                    if (suite != null) {
+                        durations.merge(suite.name, suite.durationSeconds, Math::max);
+                    }
+                } catch (Exception e) {
+                    // ignore broken reports
+                }
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * Reads durations of test classes from a properties file, where keys are class names,
+     * and values are durations in seconds.
+     */
+    @SneakyThrows
+    public static Map<String, Double> readDurationsFile(File file) {
+        var properties = new Properties();
+        try (var in = Files.newInputStream(file.toPath())) {
+            properties.load(in);
+        }
+
+        Map<String, Double> durations = new TreeMap<>();
+        properties.stringPropertyNames().forEach(className -> {
+            try {
+                durations.put(className, Double.parseDouble(properties.getProperty(className)));
+            } catch (NumberFormatException e) {
+                // ignore broken values
+            }
+        });
+        return durations;
+    }
+
+    /**
+     * Writes durations of test classes sorted by class name, so the file is stable under version control.
+     */
+    @SneakyThrows
+    public static void writeDurationsFile(File file, Map<String, Double> durations) {
+        List<String> lines = new ArrayList<>();
+        new TreeMap<>(durations).forEach((className, duration) ->
+            lines.add(className + '=' + String.format(Locale.ROOT, "%.3f", duration))
+        );
+
+        var parentDir = file.getParentFile();
+        if (parentDir != null) {
+            Files.createDirectories(parentDir.toPath());
+        }
+        Files.write(file.toPath(), lines, UTF_8);
+    }
+
+    @Nullable
+    @SneakyThrows
+    private static TestSuite readTestSuite(InputStream in) {
+        var factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        var reader = factory.createXMLStreamReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    if (!reader.getLocalName().equals("testsuite")) {
+                        return null;
+                    }
+
+                    var name = reader.getAttributeValue(null, "name");
+                    var time = reader.getAttributeValue(null, "time");
+                    if (name == null || time == null) {
+                        return null;
+                    }
+
+                    return new TestSuite(name, Double.parseDouble(time));
+                }
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static class TestSuite {
+
+        private final String name;
+
+        private final double durationSeconds;
+
+        private TestSuite(String name, double durationSeconds) {
+            this.name = name;
+            this.durationSeconds = durationSeconds;
+        }
+
+    }
+
+}
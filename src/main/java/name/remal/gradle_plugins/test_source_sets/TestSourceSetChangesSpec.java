@@ -0,0 +1,247 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.CustomLog;
+import org.gradle.api.Task;
+import org.gradle.api.artifacts.component.ProjectComponentIdentifier;
+import org.gradle.api.artifacts.result.ResolvedComponentResult;
+import org.gradle.api.artifacts.result.ResolvedDependencyResult;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.specs.Spec;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Executes a test task only if any of the changed files is relevant for its test source set.
+ *
+ * <p>A changed file is relevant if it's:
+ * <ul>
+ *     <li>a build-wide file (settings script, root build script, root {@code gradle.properties},
+ *     {@code gradle/} dir, {@code buildSrc/}, dirs of included builds,
+ *     or any other file of the root project outside of its {@code src/} dir)
+ *     <li>a build file of the project (dependencies of the test source set and inherited {@code test} configurations
+ *     are declared there)
+ *     <li>in a source dir of the test source set or of {@code main} source set
+ *     <li>any other file of the project, unless it's in a source dir of a source set which output is not
+ *     on the runtime classpath of the test source set
+ *     <li>in a dir of a project on the runtime classpath of the test source set
+ * </ul>
+ *
+ * <p>If the test source set depends on other variants of its own project (like {@code testFixtures(project)}),
+ * all files of the project are relevant.
+ *
+ * <p>If the project owning a changed file can't be determined, or projects on the runtime classpath are unknown,
+ * the file is considered relevant.
+ */
+@CustomLog
+class TestSourceSetChangesSpec implements Spec<Task> {
+
+    private static final String ROOT_PROJECT_PATH = ":";
+
+    private static final String ROOT_PROJECT_SOURCES_DIR = "src";
+
+    private final Provider<List<File>> changedFiles;
+
+    private final File rootDir;
+
+    private final List<File> buildWideFiles;
+
+    private final String projectPath;
+
+    private final List<File> buildFiles;
+
+    private final List<File> sourceDirs;
+
+    private final List<SourceSetFiles> otherSourceSets;
+
+    private final FileCollection runtimeClasspathFiles;
+
+    private final Map<String, File> projectDirs;
+
+    @Nullable
+    private final Provider<ResolvedComponentResult> runtimeClasspath;
+
+    public TestSourceSetChangesSpec(
+        Provider<List<File>> changedFiles,
+        File rootDir,
+        List<File> buildWideFiles,
+        String projectPath,
+        List<File> buildFiles,
+        List<File> sourceDirs,
+        List<SourceSetFiles> otherSourceSets,
+        FileCollection runtimeClasspathFiles,
+        Map<String, File> projectDirs,
+        @Nullable Provider<ResolvedComponentResult> runtimeClasspath
+    ) {
+        this.changedFiles = changedFiles;
+        this.rootDir = rootDir;
+        this.buildWideFiles = buildWideFiles;
+        this.projectPath = projectPath;
+        this.buildFiles = buildFiles;
+        this.sourceDirs = sourceDirs;
+        this.otherSourceSets = otherSourceSets;
+        this.runtimeClasspathFiles = runtimeClasspathFiles;
+        this.projectDirs = projectDirs;
+        this.runtimeClasspath = runtimeClasspath;
+    }
+
+    @Override
+    public boolean isSatisfiedBy(Task task) {
+        Set<String> upstreamProjectPaths = null;
+        List<File> notUsedSourceDirs = null;
+        for (var changedFile : changedFiles.get()) {
+            var changedPath = changedFile.toPath();
+            if (buildFiles.stream().anyMatch(file -> changedPath.equals(file.toPath()))
+                || sourceDirs.stream().anyMatch(dir -> changedPath.startsWith(dir.toPath()))
+            ) {
+                logger.info("{}: relevant file changed: {}", task, changedFile);
+                return true;
+            }
+
+            var owner = getOwnerProjectPath(changedPath);
+            if (owner == null) {
+                logger.info("{}: file of unknown project changed: {}", task, changedFile);
+                return true;
+            }
+
+            if (isBuildWide(changedPath, owner)) {
+                logger.info("{}: build-wide file changed: {}", task, changedFile);
+                return true;
+            }
+
+            if (upstreamProjectPaths == null) {
+                upstreamProjectPaths = getUpstreamProjectPaths();
+            }
+
+            if (owner.equals(projectPath)) {
+                if (notUsedSourceDirs == null) {
+                    notUsedSourceDirs = getNotUsedSourceDirs(upstreamProjectPaths);
+                }
+                if (notUsedSourceDirs.stream().noneMatch(dir -> changedPath.startsWith(dir.toPath()))) {
+                    logger.info("{}: file of the project changed: {}", task, changedFile);
+                    return true;
+                }
+                continue;
+            }
+
+            if (upstreamProjectPaths == null || upstreamProjectPaths.contains(owner)) {
+                logger.info("{}: file of upstream project changed: {}", task, changedFile);
+                return true;
+            }
+        }
+
+        logger.lifecycle("{}: skipped, as no relevant files changed", task);
+        return false;
+    }
+
+    /**
+     * The root project dir contains all files of the build, so files of the root project outside of its sources
+     * (like the root build script, convention plugins, CI configuration) are considered build-wide.
+     */
+    private boolean isBuildWide(Path changedPath, String owner) {
+        if (buildWideFiles.stream().anyMatch(file -> changedPath.startsWith(file.toPath()))) {
+            return true;
+        }
+
+        return owner.equals(ROOT_PROJECT_PATH)
+            && !changedPath.startsWith(rootDir.toPath().resolve(ROOT_PROJECT_SOURCES_DIR));
+    }
+
+    /**
+     * Returns the path of the project with the most specific dir containing the file.
+     */
+    @Nullable
+    private String getOwnerProjectPath(Path changedPath) {
+        String owner = null;
+        Path ownerDir = null;
+        for (var entry : projectDirs.entrySet()) {
+            var dir = entry.getValue().toPath();
+            if (changedPath.startsWith(dir)
+                && (ownerDir == null || dir.getNameCount() > ownerDir.getNameCount())
+            ) {
+                owner = entry.getKey();
+                ownerDir = dir;
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * Returns source dirs of source sets of the project which outputs are not on the runtime classpath.
+     * If the test source set depends on its own project, or projects on the runtime classpath are unknown,
+     * outputs of all source sets can be on the runtime classpath.
+     */
+    private List<File> getNotUsedSourceDirs(@Nullable Set<String> upstreamProjectPaths) {
+        if (upstreamProjectPaths == null || upstreamProjectPaths.contains(projectPath)) {
+            return List.of();
+        }
+
+        var classpath = new HashSet<>(runtimeClasspathFiles.getFiles());
+        List<File> notUsedSourceDirs = new ArrayList<>();
+        for (var sourceSet : otherSourceSets) {
+            if (sourceSet.output.getFiles().stream().noneMatch(classpath::contains)) {
+                notUsedSourceDirs.addAll(sourceSet.sourceDirs);
+            }
+        }
+        return notUsedSourceDirs;
+    }
+
+    /**
+     * Returns paths of projects the runtime classpath depends on. The root component is not included,
+     * unless the test source set depends on other variants of its own project.
+     */
+    @Nullable
+    private Set<String> getUpstreamProjectPaths() {
+        if (runtimeClasspath == null) {
+            return null;
+        }
+
+        Set<String> projectPaths = new HashSet<>();
+        Set<ResolvedComponentResult> visited = new HashSet<>();
+        var queue = new ArrayDeque<ResolvedComponentResult>();
+        queue.add(runtimeClasspath.get());
+        while (!queue.isEmpty()) {
+            var component = queue.remove();
+            if (!visited.add(component)) {
+                continue;
+            }
+
+            for (var dependency : component.getDependencies()) {
+                if (dependency instanceof ResolvedDependencyResult) {
+                    var selected = ((ResolvedDependencyResult) dependency).getSelected();
+                    var id = selected.getId();
+                    if (id instanceof ProjectComponentIdentifier) {
+                        projectPaths.add(((ProjectComponentIdentifier) id).getProjectPath());
+                    }
+                    queue.add(selected);
+                }
+            }
+        }
+        return projectPaths;
+    }
+
+
+    /**
+     * Source dirs and output of a source set of the project.
+     */
+    static class SourceSetFiles {
+
+        private final List<File> sourceDirs;
+
+        private final FileCollection output;
+
+        public SourceSetFiles(List<File> sourceDirs, FileCollection output) {
+            this.sourceDirs = sourceDirs;
+            this.output = output;
+        }
+
+    }
+
+}
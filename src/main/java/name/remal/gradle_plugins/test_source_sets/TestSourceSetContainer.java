@@ -8,4 +8,56 @@ public interface TestSourceSetContainer extends NamedDomainObjectContainer<Sourc
 
     Property<TestSuffixCheckMode> getTestSuffixCheck();
 
+    /**
+     * If enabled and {@code jacoco} plugin is applied, {@code main} classes are instrumented once by
+     * a cacheable task, and test tasks of all test source sets use the instrumented classes
+     * instead of instrumenting them on the fly with JaCoCo agent.
+     *
+     * <p>Disabled by default.
+     */
+    Property<Boolean> getJacocoOfflineInstrumentation();
+
+    /**
+     * If enabled and {@code java-gradle-plugin} is applied, test tasks of all test source sets
+     * use a TestKit dir shared by the whole build, and the number of such test tasks executed in parallel is limited.
+     *
+     * <p>Disabled by default.
+     */
+    Property<Boolean> getSharedTestKit();
+
+    /**
+     * Order of test tasks of the project, based on their durations in previous builds.
+     * Durations of test tasks are recorded only if this property is not {@link TestTasksOrder#DEFAULT}.
+     *
+     * <p>{@link TestTasksOrder#DEFAULT} by default.
+     */
+    Property<TestTasksOrder> getTestTasksOrder();
+
+    /**
+     * If enabled, test tasks of test source sets execute only test classes affected by changes
+     * since the last successful execution, according to dependencies between classes.
+     * All test classes are executed if there is no data of the last execution, or if resources or jars were changed.
+     *
+     * <p>Disabled by default.
+     */
+    Property<Boolean> getAffectedTestsOnly();
+
+    /**
+     * If enabled, results of passed test classes are cached by hashes of the test class bytecode,
+     * of classes it transitively depends on, and of resources and jars of the classpath.
+     * Test classes with cached results are not executed, and their JUnit XML reports are restored.
+     *
+     * <p>Disabled by default.
+     */
+    Property<Boolean> getTestClassResultsCache();
+
+    /**
+     * If enabled, a Class Data Sharing archive is generated for each test source set by a cacheable task,
+     * and test tasks of test source sets use it to reduce startup time of every forked JVM.
+     * The archive is generated and used only for Java 11 or newer.
+     *
+     * <p>Disabled by default.
+     */
+    Property<Boolean> getClassDataSharing();
+
 }
@@ -0,0 +1,56 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.inject.Inject;
+import org.gradle.api.Action;
+import org.gradle.api.Named;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.testing.Test;
+
+/**
+ * A test source set that is created in every project the plugin is applied to.
+ *
+ * @see TestSourceSetTemplates
+ */
+public abstract class TestSourceSetTemplate implements Named {
+
+    private final String name;
+
+    private final List<Action<? super SourceSet>> sourceSetActions = new ArrayList<>();
+
+    private final List<Action<? super Test>> testTaskActions = new ArrayList<>();
+
+    @Inject
+    public TestSourceSetTemplate(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Adds an action that configures the test source set.
+     */
+    public void sourceSet(Action<? super SourceSet> action) {
+        sourceSetActions.add(action);
+    }
+
+    /**
+     * Adds an action that configures the {@link Test} task of the test source set.
+     */
+    public void testTask(Action<? super Test> action) {
+        testTaskActions.add(action);
+    }
+
+    List<Action<? super SourceSet>> getSourceSetActions() {
+        return sourceSetActions;
+    }
+
+    List<Action<? super Test>> getTestTaskActions() {
+        return testTaskActions;
+    }
+
+}
@@ -0,0 +1,100 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.lang.String.format;
+import static java.util.Collections.unmodifiableMap;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.inject.Inject;
+import org.gradle.api.Action;
+import org.gradle.api.NamedDomainObjectContainer;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.testing.Test;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Settings extension with test source sets that are created in every project of the build.
+ *
+ * <p>Templates are compiled once, when the first project is configured.
+ * After that, new templates can't be added, and changes of existing templates are not visible to projects.
+ */
+public abstract class TestSourceSetTemplates {
+
+    private final NamedDomainObjectContainer<TestSourceSetTemplate> templates;
+
+    @Nullable
+    private volatile Map<String, CompiledTemplate> compiledTemplates;
+
+    @Inject
+    public TestSourceSetTemplates(ObjectFactory objects) {
+        this.templates = objects.domainObjectContainer(TestSourceSetTemplate.class);
+        this.templates.whenObjectAdded(template -> {
+            if (compiledTemplates != null) {
+                throw new IllegalStateException(format(
+                    "Test source set template `%s` can't be added, as templates have already been applied to projects",
+                    template.getName()
+                ));
+            }
+        });
+    }
+
+    public NamedDomainObjectContainer<TestSourceSetTemplate> getTemplates() {
+        return templates;
+    }
+
+    public void template(String name) {
+        templates.maybeCreate(name);
+    }
+
+    public void template(String name, Action<? super TestSourceSetTemplate> action) {
+        action.execute(templates.maybeCreate(name));
+    }
+
+
+    Map<String, CompiledTemplate> compile() {
+        var result = compiledTemplates;
+        if (result == null) {
+            synchronized (this) {
+                result = compiledTemplates;
+                if (result == null) {
+                    var map = new LinkedHashMap<String, CompiledTemplate>();
+                    for (var template : templates) {
+                        map.put(template.getName(), new CompiledTemplate(
+                            List.copyOf(template.getSourceSetActions()),
+                            List.copyOf(template.getTestTaskActions())
+                        ));
+                    }
+                    result = compiledTemplates = unmodifiableMap(map);
+                }
+            }
+        }
+        return result;
+    }
+
+    static final class CompiledTemplate {
+
+        private final List<Action<? super SourceSet>> sourceSetActions;
+
+        private final List<Action<? super Test>> testTaskActions;
+
+        private CompiledTemplate(
+            List<Action<? super SourceSet>> sourceSetActions,
+            List<Action<? super Test>> testTaskActions
+        ) {
+            this.sourceSetActions = sourceSetActions;
+            this.testTaskActions = testTaskActions;
+        }
+
+        public List<Action<? super SourceSet>> getSourceSetActions() {
+            return sourceSetActions;
+        }
+
+        public List<Action<? super Test>> getTestTaskActions() {
+            return testTaskActions;
+        }
+
+    }
+
+}
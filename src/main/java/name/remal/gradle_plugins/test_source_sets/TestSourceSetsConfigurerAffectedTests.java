@@ -0,0 +1,96 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static lombok.AccessLevel.PRIVATE;
+import static name.remal.gradle_plugins.test_source_sets.AffectedTestsAnalysis.getTestTaskFileName;
+import static name.remal.gradle_plugins.test_source_sets.AffectedTestsAnalysis.getTestTaskKeyFileName;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerShards.getAllTestTasks;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerShards.getTestTaskNames;
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static name.remal.gradle_plugins.toolkit.ProjectUtils.afterEvaluateOrNow;
+
+import lombok.NoArgsConstructor;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.testing.TestFilter;
+
+@NoArgsConstructor(access = PRIVATE)
+abstract class TestSourceSetsConfigurerAffectedTests {
+
+    /**
+     * Test tasks of test source sets, including shard tasks, execute only test classes selected
+     * by {@link AffectedTestsAnalysis} task. Every test task has its own baseline.
+     * The baseline is updated only if the test task isn't filtered and all its tests pass,
+     * so failed tests are executed again in the next build.
+     * All tests are executed if settings of the test task (JVM arguments, environment, Java installation)
+     * changed since the baseline.
+     */
+    public static void configureAffectedTests(Project project, ConfigurationProfiler profiler) {
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        afterEvaluateOrNow(project, __ -> {
+            var affectedTestsOnly = testSourceSets.getAffectedTestsOnly();
+            affectedTestsOnly.finalizeValue();
+            if (!affectedTestsOnly.getOrElse(false)) {
+                return;
+            }
+
+            testSourceSets.configureEach(profiler.wrap("configureAffectedTests", testSourceSet ->
+                configureAffectedTests(project, testSourceSet)
+            ));
+        });
+    }
+
+    public static String getAffectedTestsAnalysisTaskName(SourceSet testSourceSet) {
+        return testSourceSet.getName() + "AffectedTests";
+    }
+
+    private static void configureAffectedTests(Project project, SourceSet testSourceSet) {
+        var dir = project.getLayout().getBuildDirectory().dir("affected-tests/" + testSourceSet.getName());
+        var analysisTask = project.getTasks().register(
+            getAffectedTestsAnalysisTaskName(testSourceSet),
+            AffectedTestsAnalysis.class,
+            task -> {
+                task.setDescription("Selects " + testSourceSet.getName() + " test classes affected by changes");
+                task.getTestClassesDirs().from(testSourceSet.getOutput().getClassesDirs());
+                task.getClasspath().from(testSourceSet.getRuntimeClasspath());
+                task.getTestTaskNames().addAll(project.provider(() -> getTestTaskNames(testSourceSet)));
+                task.getBaselinesDir().convention(dir.map(it -> it.dir("baselines")));
+                task.getStateFile().convention(dir.map(it -> it.file("state.txt")));
+                task.getSelectionsDir().convention(dir.map(it -> it.dir("selections")));
+            }
+        );
+
+        var commandLineFilters = hasCommandLineFilters(project);
+        getAllTestTasks(project, testSourceSet).configureEach(task -> {
+            var fileName = getTestTaskFileName(task.getName());
+            var selectionFile = analysisTask.flatMap(it -> it.getSelectionsDir().file(fileName));
+            task.getInputs().file(selectionFile)
+                .withPropertyName("affectedTests");
+            task.getFilter().setFailOnNoMatchingTests(false);
+
+            var analysis = analysisTask.get();
+            var selection = selectionFile.get().getAsFile();
+            var baselineKey = analysis.getBaselinesDir().file(getTestTaskKeyFileName(task.getName()))
+                .get().getAsFile();
+            var updateBaseline = new AffectedTestsFilter.UpdateBaseline(
+                analysis.getStateFile().get().getAsFile(),
+                analysis.getBaselinesDir().file(fileName).get().getAsFile(),
+                baselineKey,
+                commandLineFilters
+            );
+            task.onlyIf(new AffectedTestsFilter.IsNotEmpty(selection, baselineKey));
+            task.onlyIf(updateBaseline);
+            task.doFirst(new AffectedTestsFilter(selection, baselineKey));
+            task.doFirst(updateBaseline);
+        });
+    }
+
+    /**
+     * Test filters set by {@code --tests} option are not exposed by the public API of {@link TestFilter},
+     * so the option is looked up in the requested tasks.
+     */
+    private static boolean hasCommandLineFilters(Project project) {
+        return project.getGradle().getStartParameter().getTaskNames().stream()
+            .anyMatch(arg -> arg.equals("--tests") || arg.startsWith("--tests="));
+    }
+
+}
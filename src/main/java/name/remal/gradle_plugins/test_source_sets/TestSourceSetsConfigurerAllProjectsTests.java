@@ -0,0 +1,92 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static lombok.AccessLevel.PRIVATE;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsPlugin.ALL_PROJECTS_TESTS_TASK_NAME;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsPlugin.ALL_TESTS_TASK_NAME;
+import static name.remal.gradle_plugins.toolkit.ObjectUtils.doNotInline;
+import static org.gradle.language.base.plugins.LifecycleBasePlugin.VERIFICATION_GROUP;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import lombok.NoArgsConstructor;
+import org.gradle.api.Project;
+import org.gradle.api.initialization.ProjectDescriptor;
+import org.gradle.api.initialization.Settings;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.reflect.TypeOf;
+import org.jspecify.annotations.Nullable;
+
+@NoArgsConstructor(access = PRIVATE)
+abstract class TestSourceSetsConfigurerAllProjectsTests {
+
+    static final String PROJECT_DIRS_EXTENSION_NAME = doNotInline("testSourceSetsProjectDirs");
+
+    private static final TypeOf<Provider<Map<String, File>>> PROJECT_DIRS_EXTENSION_TYPE = new TypeOf<>() { };
+
+
+    /**
+     * Projects can't access other projects if projects are isolated,
+     * so paths and dirs of all projects are taken from settings.
+     */
+    public static void registerProjectDirs(Settings settings) {
+        settings.getGradle().getExtensions().add(
+            PROJECT_DIRS_EXTENSION_TYPE,
+            PROJECT_DIRS_EXTENSION_NAME,
+            settings.getProviders().provider(() -> getProjectDirs(settings.getRootProject()))
+        );
+    }
+
+    /**
+     * Returns dirs of all projects of the build by project paths,
+     * or {@code null} if the plugin is not applied to settings.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static Provider<Map<String, File>> findProjectDirs(Project project) {
+        return (Provider<Map<String, File>>) project.getGradle().getExtensions()
+            .findByName(PROJECT_DIRS_EXTENSION_NAME);
+    }
+
+    private static Map<String, File> getProjectDirs(ProjectDescriptor rootProject) {
+        Map<String, File> dirs = new LinkedHashMap<>();
+        collectProjectDirs(rootProject, dirs);
+        return dirs;
+    }
+
+    private static void collectProjectDirs(ProjectDescriptor project, Map<String, File> dirs) {
+        dirs.put(project.getPath(), project.getProjectDir());
+        project.getChildren().forEach(child -> collectProjectDirs(child, dirs));
+    }
+
+
+    /**
+     * The plugin applied to settings is applied to all projects, so {@code allTests} task exists in every project.
+     */
+    public static void configureAllProjectsTests(Project project, ConfigurationProfiler profiler) {
+        if (!project.getPath().equals(":")) {
+            return;
+        }
+
+        var projectDirs = findProjectDirs(project);
+        if (projectDirs == null) {
+            return;
+        }
+
+        project.getTasks().register(
+            ALL_PROJECTS_TESTS_TASK_NAME,
+            profiler.wrap("configureAllProjectsTests", task -> {
+                task.setGroup(VERIFICATION_GROUP);
+                task.setDescription("Runs test task for each test-source-set of all projects");
+                task.dependsOn((Callable<List<String>>) () -> projectDirs.get().keySet().stream()
+                    .map(path -> path.equals(":") ? ":" + ALL_TESTS_TASK_NAME : path + ":" + ALL_TESTS_TASK_NAME)
+                    .collect(Collectors.toList())
+                );
+            })
+        );
+    }
+
+}
@@ -0,0 +1,202 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static lombok.AccessLevel.PRIVATE;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerAllProjectsTests.findProjectDirs;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerShards.getTestTaskNames;
+import static name.remal.gradle_plugins.test_source_sets.TestTaskNameUtils.getTestTaskName;
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static name.remal.gradle_plugins.toolkit.GradleVersionUtils.isCurrentGradleVersionGreaterThanOrEqualTo;
+import static name.remal.gradle_plugins.toolkit.ObjectUtils.doNotInline;
+import static name.remal.gradle_plugins.toolkit.ProjectUtils.afterEvaluateOrNow;
+import static org.gradle.api.tasks.SourceSet.MAIN_SOURCE_SET_NAME;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import lombok.NoArgsConstructor;
+import name.remal.gradle_plugins.test_source_sets.TestSourceSetChangesSpec.SourceSetFiles;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.result.ResolvedComponentResult;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.api.tasks.testing.Test;
+import org.jspecify.annotations.Nullable;
+
+@NoArgsConstructor(access = PRIVATE)
+abstract class TestSourceSetsConfigurerChangedFiles {
+
+    public static final String CHANGED_FILES_PROPERTY = doNotInline("name.remal.test-source-sets.changed-files");
+
+    public static final String CHANGED_SINCE_PROPERTY = doNotInline("name.remal.test-source-sets.changed-since");
+
+    private static final boolean IS_PROVIDERS_EXEC_SUPPORTED =
+        isCurrentGradleVersionGreaterThanOrEqualTo("7.5");
+
+    private static final boolean IS_RESOLUTION_RESULT_ROOT_COMPONENT_SUPPORTED =
+        isCurrentGradleVersionGreaterThanOrEqualTo("7.4");
+
+    private static final List<String> BUILD_WIDE_PATHS = List.of(
+        "settings.gradle",
+        "settings.gradle.kts",
+        "build.gradle",
+        "build.gradle.kts",
+        "gradle.properties",
+        "gradle",
+        "buildSrc",
+        "build-logic"
+    );
+
+    private static final Pattern CHANGED_FILES_DELIMITER = Pattern.compile("[,\\r\\n]+");
+
+
+    /**
+     * If changed files are given, test tasks of test source sets are executed only if relevant files changed
+     * (see {@link TestSourceSetChangesSpec}).
+     */
+    public static void configureChangedFiles(Project project, ConfigurationProfiler profiler) {
+        var changedFiles = getChangedFiles(project);
+        if (changedFiles == null) {
+            return;
+        }
+
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        afterEvaluateOrNow(project, __ -> {
+            var projectDirs = getProjectDirs(project);
+            var buildWideFiles = getBuildWideFiles(project);
+            var sourceSets = getExtension(project, SourceSetContainer.class);
+            var mainSourceSet = sourceSets.getByName(MAIN_SOURCE_SET_NAME);
+            List<File> buildFiles = List.of(
+                project.getBuildFile(),
+                new File(project.getProjectDir(), "gradle.properties")
+            );
+
+            Map<String, SourceSetFiles> allSourceSetFiles = new LinkedHashMap<>();
+            sourceSets.forEach(sourceSet -> allSourceSetFiles.put(sourceSet.getName(), new SourceSetFiles(
+                List.copyOf(sourceSet.getAllSource().getSrcDirs()),
+                sourceSet.getOutput()
+            )));
+
+            testSourceSets.configureEach(profiler.wrap("configureChangedFiles", testSourceSet -> {
+                List<File> sourceDirs = new ArrayList<>();
+                sourceDirs.addAll(testSourceSet.getAllSource().getSrcDirs());
+                sourceDirs.addAll(mainSourceSet.getAllSource().getSrcDirs());
+
+                List<SourceSetFiles> otherSourceSets = new ArrayList<>();
+                allSourceSetFiles.forEach((name, files) -> {
+                    if (!name.equals(testSourceSet.getName()) && !name.equals(MAIN_SOURCE_SET_NAME)) {
+                        otherSourceSets.add(files);
+                    }
+                });
+
+                var spec = new TestSourceSetChangesSpec(
+                    changedFiles,
+                    project.getRootDir(),
+                    buildWideFiles,
+                    project.getPath(),
+                    buildFiles,
+                    sourceDirs,
+                    otherSourceSets,
+                    testSourceSet.getRuntimeClasspath(),
+                    projectDirs,
+                    getRuntimeClasspathRootComponent(project, testSourceSet)
+                );
+
+                var testTaskNames = new LinkedHashSet<String>();
+                testTaskNames.add(getTestTaskName(testSourceSet));
+                testTaskNames.addAll(getTestTaskNames(testSourceSet));
+                testTaskNames.forEach(testTaskName ->
+                    project.getTasks().named(testTaskName, Test.class).configure(task -> task.onlyIf(spec))
+                );
+            }));
+        });
+    }
+
+    /**
+     * Changed files are taken from {@link #CHANGED_FILES_PROPERTY} (paths relative to the root dir),
+     * or from {@code git diff} against {@link #CHANGED_SINCE_PROPERTY} ref.
+     */
+    @Nullable
+    private static Provider<List<File>> getChangedFiles(Project project) {
+        var providers = project.getProviders();
+        var changedFiles = providers.gradleProperty(CHANGED_FILES_PROPERTY);
+        var changedSince = providers.gradleProperty(CHANGED_SINCE_PROPERTY);
+
+        final Provider<String> changedFilesText;
+        if (changedFiles.isPresent()) {
+            changedFilesText = changedFiles;
+        } else if (changedSince.isPresent()) {
+            if (!IS_PROVIDERS_EXEC_SUPPORTED) {
+                throw new UnsupportedOperationException(
+                    CHANGED_SINCE_PROPERTY + " Gradle property requires Gradle 7.5 or newer"
+                        + ", use " + CHANGED_FILES_PROPERTY + " Gradle property instead"
+                );
+            }
+
+            var rootDir = project.getRootDir();
+            changedFilesText = changedSince.flatMap(ref -> providers.exec(spec -> {
+                spec.setWorkingDir(rootDir);
+                spec.commandLine("git", "diff", "--name-only", "--relative", ref);
+            }).getStandardOutput().getAsText());
+        } else {
+            return null;
+        }
+
+        var rootDir = project.getRootDir();
+        return changedFilesText.map(text -> {
+            List<File> files = new ArrayList<>();
+            for (var path : CHANGED_FILES_DELIMITER.split(text)) {
+                path = path.trim();
+                if (!path.isEmpty()) {
+                    var file = new File(path);
+                    files.add((file.isAbsolute() ? file : new File(rootDir, path)).toPath().normalize().toFile());
+                }
+            }
+            return files;
+        });
+    }
+
+    /**
+     * Project dirs are registered by the plugin applied to settings,
+     * as projects can't access other projects if projects are isolated.
+     */
+    private static Map<String, File> getProjectDirs(Project project) {
+        var projectDirs = findProjectDirs(project);
+        if (projectDirs == null) {
+            throw new IllegalStateException(
+                CHANGED_FILES_PROPERTY + " and " + CHANGED_SINCE_PROPERTY + " Gradle properties"
+                    + " require the plugin to be applied in settings"
+            );
+        }
+
+        return projectDirs.get();
+    }
+
+    private static List<File> getBuildWideFiles(Project project) {
+        var rootDir = project.getRootDir();
+        List<File> files = new ArrayList<>();
+        BUILD_WIDE_PATHS.forEach(path -> files.add(new File(rootDir, path)));
+        project.getGradle().getIncludedBuilds().forEach(build -> files.add(build.getProjectDir()));
+        return files;
+    }
+
+    @Nullable
+    private static Provider<ResolvedComponentResult> getRuntimeClasspathRootComponent(
+        Project project,
+        SourceSet testSourceSet
+    ) {
+        if (!IS_RESOLUTION_RESULT_ROOT_COMPONENT_SUPPORTED) {
+            return null;
+        }
+
+        return project.getConfigurations().getByName(testSourceSet.getRuntimeClasspathConfigurationName())
+            .getIncoming()
+            .getResolutionResult()
+            .getRootComponent();
+    }
+
+}
@@ -0,0 +1,101 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static lombok.AccessLevel.PRIVATE;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerShards.getTestTaskNames;
+import static name.remal.gradle_plugins.test_source_sets.TestTaskNameUtils.getTestTaskName;
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static name.remal.gradle_plugins.toolkit.ProjectUtils.afterEvaluateOrNow;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import org.gradle.api.Project;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.process.CommandLineArgumentProvider;
+
+@NoArgsConstructor(access = PRIVATE)
+abstract class TestSourceSetsConfigurerClassDataSharing {
+
+    public static void configureClassDataSharing(Project project, ConfigurationProfiler profiler) {
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        afterEvaluateOrNow(project, __ -> {
+            var classDataSharing = testSourceSets.getClassDataSharing();
+            classDataSharing.finalizeValue();
+            if (!classDataSharing.getOrElse(false)) {
+                return;
+            }
+
+            testSourceSets.configureEach(profiler.wrap("configureClassDataSharing", testSourceSet ->
+                configureClassDataSharing(project, testSourceSet)
+            ));
+        });
+    }
+
+    public static String getClassDataSharingArchiveTaskName(SourceSet testSourceSet) {
+        return testSourceSet.getName() + "ClassDataSharingArchive";
+    }
+
+    private static void configureClassDataSharing(Project project, SourceSet testSourceSet) {
+        var testTask = project.getTasks().named(getTestTaskName(testSourceSet), Test.class);
+        var archiveTask = project.getTasks().register(
+            getClassDataSharingArchiveTaskName(testSourceSet),
+            TestClassDataSharingArchive.class,
+            task -> {
+                task.setDescription(
+                    "Generates Class Data Sharing archive for " + testSourceSet.getName() + " test tasks"
+                );
+                task.getClasspath().from(testSourceSet.getRuntimeClasspath());
+                task.getJavaLauncher().convention(testTask.flatMap(Test::getJavaLauncher));
+                task.getArchiveFile().convention(project.getLayout().getBuildDirectory().file(
+                    "test-class-data-sharing/" + testSourceSet.getName() + ".jsa"
+                ));
+            }
+        );
+
+        var testTaskNames = new LinkedHashSet<String>();
+        testTaskNames.add(getTestTaskName(testSourceSet));
+        testTaskNames.addAll(getTestTaskNames(testSourceSet));
+        testTaskNames.forEach(testTaskName ->
+            project.getTasks().named(testTaskName, Test.class).configure(task -> {
+                task.dependsOn(archiveTask);
+                task.getJvmArgumentProviders().add(new ClassDataSharingJvmArgs(
+                    archiveTask.flatMap(TestClassDataSharingArchive::getArchiveFile)
+                ));
+            })
+        );
+    }
+
+    /**
+     * The archive is not an input of test tasks, as it affects only startup time, not results of the tests.
+     */
+    @RequiredArgsConstructor
+    static class ClassDataSharingJvmArgs implements CommandLineArgumentProvider {
+
+        private final Provider<RegularFile> archiveFile;
+
+        @Internal
+        public Provider<RegularFile> getArchiveFile() {
+            return archiveFile;
+        }
+
+        @Override
+        public Iterable<String> asArguments() {
+            var file = archiveFile.get().getAsFile();
+            if (!file.isFile()) {
+                return List.of();
+            }
+
+            return List.of(
+                "-XX:SharedArchiveFile=" + file.getAbsolutePath(),
+                "-Xshare:auto"
+            );
+        }
+
+    }
+
+}
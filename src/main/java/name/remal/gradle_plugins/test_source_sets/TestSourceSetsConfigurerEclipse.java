@@ -1,14 +1,17 @@
 package name.remal.gradle_plugins.test_source_sets;
 
-import static java.util.stream.Collectors.toList;
 import static lombok.AccessLevel.PRIVATE;
+import static name.remal.gradle_plugins.test_source_sets.SourceSetConfigurationNameGetters.getConfigurationNames;
 import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
 import static name.remal.gradle_plugins.toolkit.ProjectUtils.afterEvaluateOrNow;
-import static name.remal.gradle_plugins.toolkit.SourceSetUtils.getSourceSetConfigurationNames;
 
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import lombok.NoArgsConstructor;
 import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.tasks.SourceSet;
 import org.gradle.plugins.ide.eclipse.model.EclipseModel;
 import org.gradle.util.GradleVersion;
 
@@ -17,30 +20,52 @@ abstract class TestSourceSetsConfigurerEclipse {
 
     private static final GradleVersion MIN_VERSION_TO_SUPPORT_TEST_SOURCE_SETS = GradleVersion.version("7.5");
 
-    public static void configureEclipse(Project project) {
+    public static void configureEclipse(Project project, ConfigurationProfiler profiler) {
         if (GradleVersion.current().compareTo(MIN_VERSION_TO_SUPPORT_TEST_SOURCE_SETS) < 0) {
             return;
         }
 
         project.getPluginManager().withPlugin("eclipse", __ -> {
-            afterEvaluateOrNow(project, ___ -> configureEclipseImpl(project));
+            afterEvaluateOrNow(project, ___ ->
+                profiler.run("configureEclipse", () -> configureEclipseImpl(project))
+            );
         });
     }
 
+    /**
+     * Test source sets and their configurations are added via providers,
+     * so they are collected in a single pass over all test source sets when the Eclipse model is built.
+     */
     @SuppressWarnings("UnstableApiUsage")
     private static void configureEclipseImpl(Project project) {
         var eclipseModel = getExtension(project, EclipseModel.class);
         var eclipseClasspath = eclipseModel.getClasspath();
         var testSourceSets = getExtension(project, TestSourceSetContainer.class);
-        testSourceSets.configureEach(testSourceSet -> {
-            eclipseClasspath.getTestSourceSets().add(testSourceSet);
-            eclipseClasspath.getTestConfigurations().addAll(
-                getSourceSetConfigurationNames(testSourceSet).stream()
-                    .map(project.getConfigurations()::findByName)
-                    .filter(Objects::nonNull)
-                    .collect(toList())
-            );
-        });
+        eclipseClasspath.getTestSourceSets().addAll(project.provider(() ->
+            new ArrayList<>(testSourceSets)
+        ));
+        eclipseClasspath.getTestConfigurations().addAll(project.provider(() ->
+            getTestConfigurations(project, testSourceSets)
+        ));
+    }
+
+    private static List<Configuration> getTestConfigurations(Project project, Iterable<SourceSet> testSourceSets) {
+        var confs = project.getConfigurations();
+        var processedConfNames = new HashSet<String>();
+        List<Configuration> testConfs = new ArrayList<>();
+        for (var testSourceSet : testSourceSets) {
+            for (var confName : getConfigurationNames(testSourceSet)) {
+                if (confName == null || !processedConfNames.add(confName)) {
+                    continue;
+                }
+
+                var conf = confs.findByName(confName);
+                if (conf != null) {
+                    testConfs.add(conf);
+                }
+            }
+        }
+        return testConfs;
     }
 
 }
@@ -7,98 +7,189 @@ import static name.remal.gradle_plugins.test_source_sets.Utils.adjustSetProperty
 import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
 import static name.remal.gradle_plugins.toolkit.ProjectUtils.afterEvaluateOrNow;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import lombok.NoArgsConstructor;
 import name.remal.gradle_plugins.toolkit.IdeaModuleUtils;
 import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.tasks.SourceSet;
 import org.gradle.plugins.ide.idea.model.IdeaModel;
 import org.gradle.plugins.ide.idea.model.IdeaModule;
 
 @NoArgsConstructor(access = PRIVATE)
 abstract class TestSourceSetsConfigurerIdea {
 
-    public static void configureIdea(Project project) {
+    public static void configureIdea(Project project, ConfigurationProfiler profiler) {
         project.getPluginManager().withPlugin("idea", __ -> {
-            afterEvaluateOrNow(project, ___ -> configureIdeaImpl(project));
+            afterEvaluateOrNow(project, ___ ->
+                profiler.run("configureIdea", () -> configureIdeaImpl(project, profiler))
+            );
         });
     }
 
-    private static void configureIdeaImpl(Project project) {
+    private static void configureIdeaImpl(Project project, ConfigurationProfiler profiler) {
         var ideaModel = getExtension(project, IdeaModel.class);
         var module = ideaModel.getModule();
         if (module != null) {
-            configureIdeaModule(project, module);
+            configureIdeaModule(project, module, profiler);
         }
     }
 
-    private static void configureIdeaModule(Project project, IdeaModule module) {
+    /**
+     * All test source sets that exist at this moment are handled in one batch,
+     * so properties of {@link IdeaModule} are copied once, not once per test source set.
+     * Test source sets added later are handled one by one.
+     */
+    private static void configureIdeaModule(Project project, IdeaModule module, ConfigurationProfiler profiler) {
+        var testScopeConfigurations = new TestScopeConfigurations(project, module);
+
+        var batching = new AtomicBoolean(true);
+        List<SourceSet> batch = new ArrayList<>();
         var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        testSourceSets.configureEach(profiler.wrap("configureIdea", testSourceSet -> {
+            if (batching.get()) {
+                batch.add(testSourceSet);
+            } else {
+                configureIdeaModule(module, testScopeConfigurations, List.of(testSourceSet));
+            }
+        }));
+        batching.set(false);
+
+        configureIdeaModule(module, testScopeConfigurations, batch);
+    }
 
-        testSourceSets.configureEach(testSourceSet -> {
-            project.getConfigurations().configureEach(conf -> {
-                if (conf.getName().equals(testSourceSet.getCompileClasspathConfigurationName())
-                    || conf.getName().equals(testSourceSet.getRuntimeClasspathConfigurationName())
-                ) {
-                    if (module.getScopes() == null) {
-                        module.setScopes(new LinkedHashMap<>());
-                    }
-                    var testScope = module.getScopes().computeIfAbsent("TEST", key -> new LinkedHashMap<>());
-                    var testPlusScope = testScope.computeIfAbsent("plus", key -> new ArrayList<>());
-                    testPlusScope.add(conf);
-                }
-            });
+    private static void configureIdeaModule(
+        IdeaModule module,
+        TestScopeConfigurations testScopeConfigurations,
+        Collection<SourceSet> testSourceSets
+    ) {
+        if (testSourceSets.isEmpty()) {
+            return;
+        }
 
+        Set<File> sourceDirs = new LinkedHashSet<>();
+        Set<File> resourceDirs = new LinkedHashSet<>();
+        Set<File> outputDirs = new LinkedHashSet<>();
+        for (var testSourceSet : testSourceSets) {
+            testScopeConfigurations.add(testSourceSet.getCompileClasspathConfigurationName());
+            testScopeConfigurations.add(testSourceSet.getRuntimeClasspathConfigurationName());
 
-            adjustSetProperty(
-                module,
-                IdeaModule::getSourceDirs,
-                IdeaModule::setSourceDirs,
-                set -> testSourceSet.getAllJava().getSrcDirs().forEach(set::remove)
-            );
+            sourceDirs.addAll(testSourceSet.getAllJava().getSrcDirs());
+            resourceDirs.addAll(testSourceSet.getResources().getSrcDirs());
+            outputDirs.addAll(testSourceSet.getOutput().getDirs().getFiles());
+        }
 
-            adjustSetProperty(
-                module,
-                IdeaModule::getResourceDirs,
-                IdeaModule::setResourceDirs,
-                set -> testSourceSet.getResources().getSrcDirs().forEach(set::remove)
-            );
 
+        adjustSetProperty(
+            module,
+            IdeaModule::getSourceDirs,
+            IdeaModule::setSourceDirs,
+            set -> set.removeAll(sourceDirs)
+        );
+
+        adjustSetProperty(
+            module,
+            IdeaModule::getResourceDirs,
+            IdeaModule::setResourceDirs,
+            set -> set.removeAll(resourceDirs)
+        );
+
+
+        adjustSetProperty(
+            module,
+            IdeaModuleUtils::getTestSourceDirs,
+            IdeaModuleUtils::setTestSourceDirs,
+            set -> set.addAll(sourceDirs)
+        );
+
+        adjustSetProperty(
+            module,
+            IdeaModuleUtils::getTestResourceDirs,
+            IdeaModuleUtils::setTestResourceDirs,
+            set -> set.addAll(resourceDirs)
+        );
+
+
+        adjustMapProperty(
+            module,
+            IdeaModule::getSingleEntryLibraries,
+            IdeaModule::setSingleEntryLibraries,
+            map -> {
+                adjustMapSetValue(
+                    map,
+                    "RUNTIME",
+                    set -> set.removeAll(outputDirs)
+                );
+
+                adjustMapSetValue(
+                    map,
+                    "TEST",
+                    set -> set.addAll(outputDirs)
+                );
+            }
+        );
+    }
 
-            adjustSetProperty(
-                module,
-                IdeaModuleUtils::getTestSourceDirs,
-                IdeaModuleUtils::setTestSourceDirs,
-                set -> set.addAll(testSourceSet.getAllJava().getSrcDirs())
-            );
 
-            adjustSetProperty(
-                module,
-                IdeaModuleUtils::getTestResourceDirs,
-                IdeaModuleUtils::setTestResourceDirs,
-                set -> set.addAll(testSourceSet.getResources().getSrcDirs())
-            );
+    /**
+     * Adds configurations to {@code TEST} scope of {@link IdeaModule}.
+     *
+     * <p>A single listener is registered for all configurations of the project.
+     * Configurations that already exist are added immediately.
+     */
+    private static class TestScopeConfigurations {
+
+        private final Project project;
 
+        private final IdeaModule module;
 
-            adjustMapProperty(
-                module,
-                IdeaModule::getSingleEntryLibraries,
-                IdeaModule::setSingleEntryLibraries,
-                map -> {
-                    adjustMapSetValue(
-                        map,
-                        "RUNTIME",
-                        set -> testSourceSet.getOutput().getDirs().forEach(set::remove)
-                    );
-
-                    adjustMapSetValue(
-                        map,
-                        "TEST",
-                        set -> testSourceSet.getOutput().getDirs().forEach(set::add)
-                    );
+        private final Set<String> names = new HashSet<>();
+
+        private final Set<String> addedNames = new HashSet<>();
+
+        public TestScopeConfigurations(Project project, IdeaModule module) {
+            this.project = project;
+            this.module = module;
+
+            project.getConfigurations().configureEach(conf -> {
+                if (names.contains(conf.getName())) {
+                    addToTestScope(conf);
                 }
-            );
-        });
+            });
+        }
+
+        public void add(String confName) {
+            if (!names.add(confName)) {
+                return;
+            }
+
+            var conf = project.getConfigurations().findByName(confName);
+            if (conf != null) {
+                addToTestScope(conf);
+            }
+        }
+
+        private void addToTestScope(Configuration conf) {
+            if (!addedNames.add(conf.getName())) {
+                return;
+            }
+
+            if (module.getScopes() == null) {
+                module.setScopes(new LinkedHashMap<>());
+            }
+            var testScope = module.getScopes().computeIfAbsent("TEST", key -> new LinkedHashMap<>());
+            var testPlusScope = testScope.computeIfAbsent("plus", key -> new ArrayList<>());
+            testPlusScope.add(conf);
+        }
+
     }
 
 }
@@ -1,20 +1,35 @@
 package name.remal.gradle_plugins.test_source_sets;
 
 import static java.lang.String.format;
+import static java.nio.file.Files.deleteIfExists;
 import static lombok.AccessLevel.PRIVATE;
+import static name.remal.gradle_plugins.test_source_sets.TaskRegistrationUtils.registerIfAbsent;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerShards.getTestTaskNames;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsPlugin.ALL_TESTS_TASK_NAME;
 import static name.remal.gradle_plugins.test_source_sets.TestTaskNameUtils.getTestTaskName;
 import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static name.remal.gradle_plugins.toolkit.ObjectUtils.doNotInline;
+import static name.remal.gradle_plugins.toolkit.ProjectUtils.afterEvaluateOrNow;
 import static org.codehaus.groovy.runtime.StringGroovyMethods.capitalize;
 import static org.gradle.api.tasks.SourceSet.MAIN_SOURCE_SET_NAME;
 import static org.gradle.language.base.plugins.LifecycleBasePlugin.VERIFICATION_GROUP;
+import static org.gradle.testing.jacoco.plugins.JacocoPlugin.ANT_CONFIGURATION_NAME;
 
-import java.io.File;
+import java.util.concurrent.Callable;
 import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import org.gradle.api.Action;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFile;
 import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.SourceSetContainer;
 import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.testing.Test;
+import org.gradle.testing.jacoco.plugins.JacocoPluginExtension;
 import org.gradle.testing.jacoco.plugins.JacocoTaskExtension;
 import org.gradle.testing.jacoco.tasks.JacocoCoverageVerification;
 import org.gradle.testing.jacoco.tasks.JacocoReport;
@@ -22,85 +37,278 @@ import org.gradle.testing.jacoco.tasks.JacocoReport;
 @NoArgsConstructor(access = PRIVATE)
 abstract class TestSourceSetsConfigurerJacoco {
 
-    public static void configureJacoco(Project project) {
-        project.getPluginManager().withPlugin("jacoco", __ -> {
+    public static final String JACOCO_INSTRUMENT_MAIN_CLASSES_TASK_NAME = doNotInline("jacocoInstrumentMainClasses");
+
+    public static final String JACOCO_AGENT_RUNTIME_CONFIGURATION_NAME = doNotInline("jacocoAgentRuntime");
+
+
+    public static void configureJacoco(Project project, ConfigurationProfiler profiler) {
+        project.getPluginManager().withPlugin("jacoco", profiler.wrap("configureJacoco", __ -> {
+            var allTestsReportTask = createJacocoAllTestsReportTask(project);
+            var allTestsVerificationTask = createJacocoAllTestsCoverageVerificationTask(project);
+
+            // The report is generated whenever all tests are run, like `check` task runs all verifications.
+            // Coverage verification can fail the build, so it's not executed unless it's requested.
+            project.getTasks().named(ALL_TESTS_TASK_NAME).configure(task ->
+                task.finalizedBy(allTestsReportTask)
+            );
+
             var testSourceSets = getExtension(project, TestSourceSetContainer.class);
-            testSourceSets.configureEach(sourceSet -> {
+            var offlineInstrumentation = testSourceSets.getJacocoOfflineInstrumentation();
+            var instrumentedMainOutput = createInstrumentedMainOutput(project);
+
+            testSourceSets.configureEach(profiler.wrap("configureJacoco", sourceSet -> {
                 var testTask = project.getTasks().named(getTestTaskName(sourceSet), Test.class);
-                createJacocoReportTask(project, testTask);
-                createJacocoCoverageVerificationTask(project, testTask);
-            });
+                var executionData = createExecutionDataProvider(project, testTask);
+                createJacocoReportTask(project, testTask, executionData);
+                createJacocoCoverageVerificationTask(project, testTask, executionData);
+                configureOfflineInstrumentationClasspath(
+                    project,
+                    sourceSet,
+                    offlineInstrumentation,
+                    instrumentedMainOutput
+                );
+                configureOfflineInstrumentation(testTask, executionData, offlineInstrumentation);
+                addExecutionData(allTestsReportTask, allTestsVerificationTask, testTask, executionData);
+            }));
+
+            // Every shard task has its own execution data
+            afterEvaluateOrNow(project, ___ ->
+                testSourceSets.configureEach(profiler.wrap("configureJacoco", sourceSet -> {
+                    var testTaskName = getTestTaskName(sourceSet);
+                    for (var shardTaskName : getTestTaskNames(sourceSet)) {
+                        if (shardTaskName.equals(testTaskName)) {
+                            continue;
+                        }
+
+                        var shardTask = project.getTasks().named(shardTaskName, Test.class);
+                        var executionData = createExecutionDataProvider(project, shardTask);
+                        configureOfflineInstrumentation(shardTask, executionData, offlineInstrumentation);
+                        addExecutionData(allTestsReportTask, allTestsVerificationTask, shardTask, executionData);
+                    }
+                }))
+            );
+        }));
+    }
+
+    private static void addExecutionData(
+        TaskProvider<JacocoReport> allTestsReportTask,
+        TaskProvider<JacocoCoverageVerification> allTestsVerificationTask,
+        TaskProvider<Test> testTask,
+        Provider<RegularFile> executionData
+    ) {
+        allTestsReportTask.configure(task -> {
+            task.mustRunAfter(testTask);
+            task.executionData(executionData);
+        });
+        allTestsVerificationTask.configure(task -> {
+            task.mustRunAfter(testTask);
+            task.executionData(executionData);
         });
     }
 
-    private static void createJacocoReportTask(Project project, TaskProvider<?> testTask) {
-        var tasks = project.getTasks();
-
-        final TaskProvider<JacocoReport> jacocoReportTask;
-        var jacocoReportTaskName = "jacoco" + capitalize(testTask.getName()) + "Report";
-        if (tasks.getNames().contains(jacocoReportTaskName)) {
-            jacocoReportTask = tasks.named(jacocoReportTaskName, JacocoReport.class);
-
-        } else {
-            jacocoReportTask = tasks.register(
-                jacocoReportTaskName,
-                JacocoReport.class,
-                task -> {
-                    task.setGroup(VERIFICATION_GROUP);
-                    task.setDescription(format(
-                        "Generates code coverage report for the %s task.",
-                        testTask.getName()
-                    ));
-                    task.executionData(createExecutionDataProvider(project, testTask));
-                    task.sourceSets(getExtension(project, SourceSetContainer.class)
-                        .getByName(MAIN_SOURCE_SET_NAME)
-                    );
-                }
-            );
+    /**
+     * Returns {@code main} output where classes are replaced with the classes instrumented offline,
+     * plus JaCoCo agent runtime, required by instrumented classes.
+     */
+    private static FileCollection createInstrumentedMainOutput(Project project) {
+        var jacoco = getExtension(project, JacocoPluginExtension.class);
+        var agentRuntime = project.getConfigurations().maybeCreate(JACOCO_AGENT_RUNTIME_CONFIGURATION_NAME);
+        agentRuntime.setDescription("JaCoCo agent runtime for classes instrumented offline");
+        agentRuntime.setVisible(false);
+        agentRuntime.setCanBeConsumed(false);
+        agentRuntime.defaultDependencies(deps -> deps.add(project.getDependencies().create(
+            "org.jacoco:org.jacoco.agent:" + jacoco.getToolVersion() + ":runtime"
+        )));
+
+        var mainOutput = getExtension(project, SourceSetContainer.class).getByName(MAIN_SOURCE_SET_NAME).getOutput();
+        var instrumentTask = registerIfAbsent(
+            project.getTasks(),
+            JACOCO_INSTRUMENT_MAIN_CLASSES_TASK_NAME,
+            JacocoInstrumentClasses.class,
+            task -> {
+                task.setDescription("Instruments main classes with JaCoCo offline instrumentation.");
+                task.getClassesDirs().from(mainOutput.getClassesDirs());
+                task.getJacocoClasspath().from(project.getConfigurations().named(ANT_CONFIGURATION_NAME));
+                task.getDestinationDir().convention(
+                    project.getLayout().getBuildDirectory().dir("jacoco/instrumented-classes/main")
+                );
+            }
+        );
+
+        return project.files(instrumentTask)
+            .plus(mainOutput.minus(mainOutput.getClassesDirs()))
+            .plus(agentRuntime);
+    }
+
+    private static void configureOfflineInstrumentationClasspath(
+        Project project,
+        SourceSet sourceSet,
+        Provider<Boolean> offlineInstrumentation,
+        FileCollection instrumentedMainOutput
+    ) {
+        var mainOutput = getExtension(project, SourceSetContainer.class).getByName(MAIN_SOURCE_SET_NAME).getOutput();
+        var runtimeClasspath = sourceSet.getRuntimeClasspath();
+        var instrumentedRuntimeClasspath = sourceSet.getOutput()
+            .plus(instrumentedMainOutput)
+            .plus(runtimeClasspath.minus(mainOutput));
+        sourceSet.setRuntimeClasspath(project.files((Callable<FileCollection>) () ->
+            offlineInstrumentation.getOrElse(false) ? instrumentedRuntimeClasspath : runtimeClasspath
+        ));
+    }
+
+    /**
+     * {@link JacocoTaskExtension} is configured when the {@link Test} task is realized,
+     * so the offline instrumentation should be enabled before that.
+     *
+     * <p>The disabled agent doesn't delete execution data of the previous execution, so it's deleted by the task.
+     * Execution data is still appended, as it's written by all forked JVMs of the task.
+     */
+    private static void configureOfflineInstrumentation(
+        TaskProvider<Test> testTask,
+        Provider<RegularFile> executionData,
+        Provider<Boolean> offlineInstrumentation
+    ) {
+        testTask.configure(task -> {
+            if (!offlineInstrumentation.getOrElse(false)) {
+                return;
+            }
+
+            getExtension(task, JacocoTaskExtension.class).setEnabled(false);
+            task.getJvmArgumentProviders().add(new SystemPropertyArgumentProvider(
+                "jacoco-agent.destfile",
+                executionData.map(file -> file.getAsFile().getAbsolutePath())
+            ));
+            task.getOutputs().file(executionData)
+                .optional()
+                .withPropertyName("jacocoOfflineInstrumentationExecutionData");
+            task.doFirst(new DeleteExecutionData(executionData));
+        });
+    }
+
+    @RequiredArgsConstructor
+    static class DeleteExecutionData implements Action<Task> {
+
+        private final Provider<RegularFile> executionData;
+
+        @Override
+        @SneakyThrows
+        public void execute(Task task) {
+            deleteIfExists(executionData.get().getAsFile().toPath());
         }
 
+    }
+
+    private static TaskProvider<JacocoReport> createJacocoAllTestsReportTask(Project project) {
+        return registerIfAbsent(
+            project.getTasks(),
+            "jacoco" + capitalize(ALL_TESTS_TASK_NAME) + "Report",
+            JacocoReport.class,
+            task -> {
+                task.setGroup(VERIFICATION_GROUP);
+                task.setDescription(format(
+                    "Generates code coverage report for test tasks of all test source sets (the %s task).",
+                    ALL_TESTS_TASK_NAME
+                ));
+                task.sourceSets(getExtension(project, SourceSetContainer.class)
+                    .getByName(MAIN_SOURCE_SET_NAME)
+                );
+            }
+        );
+    }
+
+    private static TaskProvider<JacocoCoverageVerification> createJacocoAllTestsCoverageVerificationTask(
+        Project project
+    ) {
+        return registerIfAbsent(
+            project.getTasks(),
+            "jacoco" + capitalize(ALL_TESTS_TASK_NAME) + "CoverageVerification",
+            JacocoCoverageVerification.class,
+            task -> {
+                task.setGroup(VERIFICATION_GROUP);
+                task.setDescription(format(
+                    "Verifies code coverage metrics based on specified rules"
+                        + " for test tasks of all test source sets (the %s task).",
+                    ALL_TESTS_TASK_NAME
+                ));
+                task.sourceSets(getExtension(project, SourceSetContainer.class)
+                    .getByName(MAIN_SOURCE_SET_NAME)
+                );
+            }
+        );
+    }
+
+    private static void createJacocoReportTask(
+        Project project,
+        TaskProvider<?> testTask,
+        Provider<RegularFile> executionData
+    ) {
+        var jacocoReportTask = registerIfAbsent(
+            project.getTasks(),
+            "jacoco" + capitalize(testTask.getName()) + "Report",
+            JacocoReport.class,
+            task -> {
+                task.setGroup(VERIFICATION_GROUP);
+                task.setDescription(format(
+                    "Generates code coverage report for the %s task.",
+                    testTask.getName()
+                ));
+                task.executionData(executionData);
+                task.sourceSets(getExtension(project, SourceSetContainer.class)
+                    .getByName(MAIN_SOURCE_SET_NAME)
+                );
+            }
+        );
+
         jacocoReportTask.configure(task -> {
             task.mustRunAfter(testTask);
         });
     }
 
-    private static void createJacocoCoverageVerificationTask(Project project, TaskProvider<?> testTask) {
-        var tasks = project.getTasks();
-
-        final TaskProvider<JacocoCoverageVerification> jacocoVerificationTask;
-        var jacocoVerificationTaskName = "jacoco" + capitalize(testTask.getName()) + "CoverageVerification";
-        if (tasks.getNames().contains(jacocoVerificationTaskName)) {
-            jacocoVerificationTask = tasks.named(jacocoVerificationTaskName, JacocoCoverageVerification.class);
-
-        } else {
-            jacocoVerificationTask = tasks.register(
-                jacocoVerificationTaskName,
-                JacocoCoverageVerification.class,
-                task -> {
-                    task.mustRunAfter(testTask);
-                    task.setGroup(VERIFICATION_GROUP);
-                    task.setDescription(format(
-                        "Verifies code coverage metrics based on specified rules for the %s task.",
-                        testTask.getName()
-                    ));
-                    task.executionData(createExecutionDataProvider(project, testTask));
-                    task.sourceSets(getExtension(project, SourceSetContainer.class)
-                        .getByName(MAIN_SOURCE_SET_NAME)
-                    );
-                }
-            );
-        }
+    private static void createJacocoCoverageVerificationTask(
+        Project project,
+        TaskProvider<?> testTask,
+        Provider<RegularFile> executionData
+    ) {
+        var jacocoVerificationTask = registerIfAbsent(
+            project.getTasks(),
+            "jacoco" + capitalize(testTask.getName()) + "CoverageVerification",
+            JacocoCoverageVerification.class,
+            task -> {
+                task.mustRunAfter(testTask);
+                task.setGroup(VERIFICATION_GROUP);
+                task.setDescription(format(
+                    "Verifies code coverage metrics based on specified rules for the %s task.",
+                    testTask.getName()
+                ));
+                task.executionData(executionData);
+                task.sourceSets(getExtension(project, SourceSetContainer.class)
+                    .getByName(MAIN_SOURCE_SET_NAME)
+                );
+            }
+        );
 
         jacocoVerificationTask.configure(task -> {
             task.mustRunAfter(testTask);
         });
     }
 
-    private static Provider<File> createExecutionDataProvider(Project project, TaskProvider<?> testTask) {
-        return project.provider(() -> {
-            var testTaskJacoco = getExtension(testTask.get(), JacocoTaskExtension.class);
-            return testTaskJacoco.getDestinationFile();
+    /**
+     * Execution data file is taken from {@link JacocoTaskExtension} of the {@link Test} task only if the task is
+     * realized. Otherwise, the default location of JaCoCo plugin is used, so the {@link Test} task is not realized
+     * just to get the location of its execution data.
+     */
+    private static Provider<RegularFile> createExecutionDataProvider(Project project, TaskProvider<Test> testTask) {
+        var layout = project.getLayout();
+        var defaultExecutionData = layout.getBuildDirectory().file(format("jacoco/%s.exec", testTask.getName()));
+        var executionData = project.getObjects().fileProperty().convention(defaultExecutionData);
+        testTask.configure(task -> {
+            var destinationFile = project.provider(() ->
+                getExtension(task, JacocoTaskExtension.class).getDestinationFile()
+            );
+            executionData.set(layout.file(destinationFile).orElse(defaultExecutionData));
         });
+        return executionData;
     }
 
 }
@@ -1,32 +1,117 @@
 package name.remal.gradle_plugins.test_source_sets;
 
+import static java.lang.Math.max;
 import static lombok.AccessLevel.PRIVATE;
+import static name.remal.gradle_plugins.test_source_sets.TestTaskNameUtils.getTestTaskName;
 import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static name.remal.gradle_plugins.toolkit.ObjectUtils.doNotInline;
 
-import java.util.stream.Stream;
+import java.io.File;
+import java.util.LinkedHashSet;
 import lombok.NoArgsConstructor;
 import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.api.tasks.testing.Test;
 import org.gradle.plugin.devel.GradlePluginDevelopmentExtension;
 
 @NoArgsConstructor(access = PRIVATE)
 abstract class TestSourceSetsConfigurerJavaGradlePlugin {
 
-    public static void configureJavaGradlePlugin(Project project) {
-        project.getPlugins().withId("java-gradle-plugin", __ -> {
+    public static final String TEST_KIT_POOL_SIZE_PROPERTY = doNotInline(
+        "name.remal.test-source-sets.testkit-pool-size"
+    );
+
+    public static void configureJavaGradlePlugin(Project project, ConfigurationProfiler profiler) {
+        project.getPlugins().withId("java-gradle-plugin", profiler.wrap("configureJavaGradlePlugin", __ -> {
             var testSourceSets = getExtension(project, TestSourceSetContainer.class);
             var gradlePluginDev = getExtension(project, GradlePluginDevelopmentExtension.class);
-            testSourceSets.whenObjectAdded(testSourceSet -> {
-                gradlePluginDev.testSourceSets(
-                    Stream.concat(
-                            gradlePluginDev.getTestSourceSets().stream(),
-                            Stream.of(testSourceSet)
-                        )
-                        .distinct()
-                        .toArray(SourceSet[]::new)
-                );
+            // `java-gradle-plugin` reads test source sets in its own `afterEvaluate` callback,
+            // which can be registered before the callback of this plugin,
+            // so test source sets are added when `java-gradle-plugin` is applied, all at once:
+            var allTestSourceSets = new LinkedHashSet<>(gradlePluginDev.getTestSourceSets());
+            allTestSourceSets.addAll(testSourceSets);
+            gradlePluginDev.testSourceSets(allTestSourceSets.toArray(new SourceSet[0]));
+
+            // Registered test source sets are created immediately for such projects:
+            testSourceSets.all(profiler.wrap("configureJavaGradlePlugin", testSourceSet ->
+                addTestSourceSet(gradlePluginDev, testSourceSet)
+            ));
+
+            configureSharedTestKit(project, testSourceSets, gradlePluginDev, profiler);
+        }));
+    }
+
+    /**
+     * In recent Gradle versions, test source sets of {@link GradlePluginDevelopmentExtension}
+     * are a {@link SourceSetContainer}, so only the new test source set is added to it.
+     * Older versions allow only replacing all test source sets at once.
+     */
+    private static void addTestSourceSet(GradlePluginDevelopmentExtension gradlePluginDev, SourceSet testSourceSet) {
+        var currentTestSourceSets = gradlePluginDev.getTestSourceSets();
+        if (currentTestSourceSets.contains(testSourceSet)) {
+            return;
+        }
+
+        if (currentTestSourceSets instanceof SourceSetContainer) {
+            currentTestSourceSets.add(testSourceSet);
+            return;
+        }
+
+        var newTestSourceSets = new LinkedHashSet<SourceSet>(currentTestSourceSets.size() + 1);
+        newTestSourceSets.addAll(currentTestSourceSets);
+        newTestSourceSets.add(testSourceSet);
+        gradlePluginDev.testSourceSets(newTestSourceSets.toArray(new SourceSet[0]));
+    }
+
+    private static void configureSharedTestKit(
+        Project project,
+        TestSourceSetContainer testSourceSets,
+        GradlePluginDevelopmentExtension gradlePluginDev,
+        ConfigurationProfiler profiler
+    ) {
+        var sharedTestKit = testSourceSets.getSharedTestKit();
+        var testKitService = registerTestKitBuildService(project);
+        var testKitDir = testKitService.map(service ->
+            service.getParameters().getTestKitDir().get().getAsFile().getAbsolutePath()
+        );
+        testSourceSets.configureEach(profiler.wrap("configureJavaGradlePlugin", testSourceSet -> {
+            var testTask = project.getTasks().named(getTestTaskName(testSourceSet), Test.class);
+            testTask.configure(task -> {
+                if (!sharedTestKit.getOrElse(false)
+                    || !gradlePluginDev.getTestSourceSets().contains(testSourceSet)
+                ) {
+                    return;
+                }
+
+                task.usesService(testKitService);
+                task.getJvmArgumentProviders().add(new SystemPropertyArgumentProvider(
+                    "org.gradle.testkit.dir",
+                    testKitDir
+                ));
             });
-        });
+        }));
+    }
+
+    /**
+     * The service is registered once per build (per class loader of the plugin).
+     * Its {@code maxParallelUsages} is taken from {@value #TEST_KIT_POOL_SIZE_PROPERTY} Gradle property
+     * and defaults to a half of available processors.
+     */
+    private static Provider<TestKitBuildService> registerTestKitBuildService(Project project) {
+        var poolSize = project.getProviders().gradleProperty(TEST_KIT_POOL_SIZE_PROPERTY)
+            .map(Integer::parseInt)
+            .orElse(max(1, Runtime.getRuntime().availableProcessors() / 2));
+        var testKitDir = new File(project.getRootDir(), ".gradle/test-kit");
+        return project.getGradle().getSharedServices().registerIfAbsent(
+            TestKitBuildService.class.getName() + '-' + System.identityHashCode(TestKitBuildService.class),
+            TestKitBuildService.class,
+            spec -> {
+                spec.getMaxParallelUsages().set(poolSize);
+                spec.getParameters().getTestKitDir().fileValue(testKitDir);
+            }
+        );
     }
 
 }
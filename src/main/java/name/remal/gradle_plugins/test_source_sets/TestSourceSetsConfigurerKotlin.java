@@ -1,13 +1,19 @@
 package name.remal.gradle_plugins.test_source_sets;
 
 import static lombok.AccessLevel.PRIVATE;
+import static name.remal.gradle_plugins.test_source_sets.KotlinGradlePluginAccessors.findAssociateWith;
+import static name.remal.gradle_plugins.test_source_sets.KotlinGradlePluginAccessors.findGetCompilations;
+import static name.remal.gradle_plugins.test_source_sets.KotlinGradlePluginAccessors.findGetTarget;
+import static name.remal.gradle_plugins.test_source_sets.KotlinGradlePluginAccessors.invokeAssociateWith;
+import static name.remal.gradle_plugins.test_source_sets.KotlinGradlePluginAccessors.invokeGetter;
 import static name.remal.gradle_plugins.test_source_sets.Utils.classOf;
 import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
 import static name.remal.gradle_plugins.toolkit.PluginManagerUtils.withAnyOfPlugins;
-import static name.remal.gradle_plugins.toolkit.reflection.MembersFinder.findMethod;
 import static org.gradle.api.tasks.SourceSet.MAIN_SOURCE_SET_NAME;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.function.Consumer;
 import lombok.CustomLog;
 import lombok.NoArgsConstructor;
 import org.gradle.api.Named;
@@ -18,7 +24,7 @@ import org.gradle.api.Project;
 @NoArgsConstructor(access = PRIVATE)
 abstract class TestSourceSetsConfigurerKotlin {
 
-    public static void configureKotlinTestSourceSets(Project project) {
+    public static void configureKotlinTestSourceSets(Project project, ConfigurationProfiler profiler) {
         var kotlinPlugins = List.of(
             "kotlin",
             "kotlin2js",
@@ -27,19 +33,19 @@ abstract class TestSourceSetsConfigurerKotlin {
         withAnyOfPlugins(
             project.getPluginManager(),
             kotlinPlugins,
-            __ -> configureKotlinTarget(project)
+            __ -> profiler.run("configureKotlinTestSourceSets", () -> configureKotlinTarget(project, profiler))
         );
     }
 
     @SuppressWarnings("unchecked")
-    private static void configureKotlinTarget(Project project) {
+    private static void configureKotlinTarget(Project project, ConfigurationProfiler profiler) {
         var testSourceSets = getExtension(project, TestSourceSetContainer.class);
         var kotlin = getExtension(project, "kotlin");
 
         final Object target;
-        var getTarget = findMethod(classOf(kotlin), Object.class, "getTarget");
+        var getTarget = findGetTarget(classOf(kotlin));
         if (getTarget != null) {
-            target = getTarget.invoke(kotlin);
+            target = invokeGetter(getTarget, kotlin);
             if (target == null) {
                 logger.warn("kotlin.target == null");
                 return;
@@ -50,13 +56,9 @@ abstract class TestSourceSetsConfigurerKotlin {
         }
 
         final NamedDomainObjectContainer<Named> compilations;
-        var getCompilations = findMethod(
-            classOf(target),
-            NamedDomainObjectContainer.class,
-            "getCompilations"
-        );
+        var getCompilations = findGetCompilations(classOf(target));
         if (getCompilations != null) {
-            compilations = getCompilations.invoke(target);
+            compilations = (NamedDomainObjectContainer<Named>) invokeGetter(getCompilations, target);
             if (compilations == null) {
                 logger.warn("kotlin.target.compilations == null");
                 return;
@@ -67,23 +69,36 @@ abstract class TestSourceSetsConfigurerKotlin {
         }
 
         var mainCompilation = compilations.getByName(MAIN_SOURCE_SET_NAME);
-        var associateWith = findMethod(
-            classOf(mainCompilation),
-            "associateWith",
-            classOf(mainCompilation)
-        );
+        var associateWith = findAssociateWith(classOf(mainCompilation));
         if (associateWith == null) {
             logger.info("Method not found: {}.{}()", classOf(mainCompilation).getName(), "associateWith");
             return;
         }
 
-        testSourceSets.configureEach(testSourceSet ->
-            compilations
-                .matching(it -> it.getName().equals(testSourceSet.getName()))
-                .configureEach(compilation ->
-                    associateWith.invoke(compilation, mainCompilation)
-                )
-        );
+        var testSourceSetNames = new HashSet<String>();
+        var associatedCompilationNames = new HashSet<String>();
+        Consumer<Named> associateWithMain = compilation -> {
+            if (associatedCompilationNames.add(compilation.getName())) {
+                invokeAssociateWith(associateWith, compilation, mainCompilation);
+            }
+        };
+
+        compilations.configureEach(profiler.wrap("configureKotlinTestSourceSets", compilation -> {
+            if (testSourceSetNames.contains(compilation.getName())) {
+                associateWithMain.accept(compilation);
+            }
+        }));
+
+        testSourceSets.configureEach(profiler.wrap("configureKotlinTestSourceSets", testSourceSet -> {
+            if (!testSourceSetNames.add(testSourceSet.getName())) {
+                return;
+            }
+
+            var compilation = compilations.findByName(testSourceSet.getName());
+            if (compilation != null) {
+                associateWithMain.accept(compilation);
+            }
+        }));
     }
 
 }
@@ -0,0 +1,212 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Comparator.comparingDouble;
+import static lombok.AccessLevel.PRIVATE;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerShards.getTestTaskNames;
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static name.remal.gradle_plugins.toolkit.ObjectUtils.doNotInline;
+import static name.remal.gradle_plugins.toolkit.ProjectUtils.afterEvaluateOrNow;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.NoArgsConstructor;
+import name.remal.gradle_plugins.test_source_sets.TestTaskDurationsBuildService.ListenerRegistrar;
+import name.remal.gradle_plugins.test_source_sets.TestTaskDurationsBuildService.TrackTestTaskDuration;
+import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.testing.Test;
+import org.jspecify.annotations.Nullable;
+
+@NoArgsConstructor(access = PRIVATE)
+abstract class TestSourceSetsConfigurerScheduling {
+
+    public static final String ALL_PROJECTS_TEST_TASKS_ORDER_PROPERTY =
+        doNotInline("name.remal.test-source-sets.all-projects-test-tasks-order");
+
+    public static final String MAX_PARALLEL_TEST_TASKS_PROPERTY =
+        doNotInline("name.remal.test-source-sets.max-parallel-test-tasks");
+
+    /**
+     * Durations of test tasks are recorded by {@link TestTaskDurationsBuildService}.
+     * Test tasks are ordered via {@link Test#shouldRunAfter(Object...)}, calculated when the task graph is built:
+     * within the project, or, if {@link #ALL_PROJECTS_TEST_TASKS_ORDER_PROPERTY} is set, across all projects.
+     *
+     * <p>With parallel execution, Gradle ignores "should run after" rules of a task that is otherwise ready,
+     * so the ordering doesn't reduce parallelism.
+     */
+    public static void configureScheduling(Project project, ConfigurationProfiler profiler) {
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        afterEvaluateOrNow(project, profiler.wrap("configureScheduling", __ -> {
+            var maxParallelTestTasks = project.getProviders().gradleProperty(MAX_PARALLEL_TEST_TASKS_PROPERTY)
+                .map(Integer::parseInt)
+                .getOrNull();
+            if (maxParallelTestTasks != null) {
+                var limiter = registerTestTasksLimiterBuildService(project, maxParallelTestTasks);
+                project.getTasks().withType(Test.class).configureEach(task -> task.usesService(limiter));
+            }
+
+            var order = testSourceSets.getTestTasksOrder();
+            order.finalizeValue();
+            var projectOrder = order.getOrElse(TestTasksOrder.DEFAULT);
+            var allProjectsOrder = project.getProviders().gradleProperty(ALL_PROJECTS_TEST_TASKS_ORDER_PROPERTY)
+                .map(TestTasksOrder::valueOf)
+                .getOrElse(TestTasksOrder.DEFAULT);
+            if (projectOrder == TestTasksOrder.DEFAULT && allProjectsOrder == TestTasksOrder.DEFAULT) {
+                return;
+            }
+
+            var durations = registerTestTaskDurationsBuildService(project);
+            project.getObjects().newInstance(ListenerRegistrar.class).register(durations);
+            project.getTasks().withType(Test.class).configureEach(task -> {
+                task.usesService(durations);
+                task.doFirst(new TrackTestTaskDuration(durations));
+            });
+
+            if (allProjectsOrder != TestTasksOrder.DEFAULT) {
+                configureAllProjectsOrder(project, durations, allProjectsOrder);
+            } else {
+                configureProjectOrder(project, durations, projectOrder);
+            }
+        }));
+    }
+
+    /**
+     * Every test task should run after only the preceding test task of the project,
+     * so the number of ordering rules grows linearly with the number of test tasks.
+     * The order is calculated once, when it's read for the first test task.
+     */
+    private static void configureProjectOrder(
+        Project project,
+        Provider<TestTaskDurationsBuildService> durations,
+        TestTasksOrder order
+    ) {
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        var orderedTaskNames = project.getObjects().listProperty(String.class);
+        orderedTaskNames.set(project.provider(() -> {
+            var testTaskNames = new ArrayList<String>();
+            testSourceSets.forEach(testSourceSet -> testTaskNames.addAll(getTestTaskNames(testSourceSet)));
+            return orderTaskNames(
+                testTaskNames,
+                name -> durations.get().getDuration(getTaskPath(project, name)),
+                order
+            );
+        }));
+        orderedTaskNames.finalizeValueOnRead();
+
+        project.getTasks().withType(Test.class).configureEach(task ->
+            task.shouldRunAfter((Callable<List<String>>) () -> {
+                var taskNames = orderedTaskNames.get();
+                var index = taskNames.indexOf(task.getName());
+                return index <= 0 ? List.of() : List.of(taskNames.get(index - 1));
+            })
+        );
+    }
+
+    /**
+     * Every test task should run after only the preceding test task in the global order,
+     * so the number of ordering rules grows linearly with the number of test tasks in the build.
+     */
+    private static void configureAllProjectsOrder(
+        Project project,
+        Provider<TestTaskDurationsBuildService> durations,
+        TestTasksOrder order
+    ) {
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        testSourceSets.configureEach(testSourceSet -> {
+            var testTaskPaths = getTestTaskNames(testSourceSet).stream()
+                .map(name -> getTaskPath(project, name))
+                .collect(Collectors.toList());
+            durations.get().registerTestTaskPaths(testTaskPaths);
+        });
+
+        project.getTasks().withType(Test.class).configureEach(task ->
+            task.shouldRunAfter((Callable<List<String>>) () -> {
+                var precedingTaskPath = durations.get().getPrecedingTestTaskPath(task.getPath(), order);
+                return precedingTaskPath != null ? List.of(precedingTaskPath) : List.of();
+            })
+        );
+    }
+
+    /**
+     * Orders task names by duration. Tasks with unknown duration are considered taking the average duration.
+     */
+    static List<String> orderTaskNames(
+        List<String> taskNames,
+        Function<String, @Nullable Long> durations,
+        TestTasksOrder order
+    ) {
+        if (order == TestTasksOrder.DEFAULT) {
+            return taskNames;
+        }
+
+        Map<String, Long> knownDurations = taskNames.stream()
+            .distinct()
+            .filter(name -> durations.apply(name) != null)
+            .collect(Collectors.toMap(Function.identity(), name -> Objects.requireNonNull(durations.apply(name))));
+        var averageDuration = knownDurations.values().stream()
+            .mapToLong(Long::longValue)
+            .average()
+            .orElse(0);
+
+        var comparator = comparingDouble((String name) ->
+            knownDurations.containsKey(name) ? knownDurations.get(name) : averageDuration
+        );
+        if (order == TestTasksOrder.LONGEST_FIRST) {
+            comparator = comparator.reversed();
+        }
+
+        return taskNames.stream()
+            .distinct()
+            .sorted(comparator)
+            .collect(Collectors.toList());
+    }
+
+    private static String getTaskPath(Project project, String taskName) {
+        var projectPath = project.getPath();
+        return projectPath.equals(":") ? ":" + taskName : projectPath + ":" + taskName;
+    }
+
+    private static Provider<TestTasksLimiterBuildService> registerTestTasksLimiterBuildService(
+        Project project,
+        int maxParallelTestTasks
+    ) {
+        return project.getGradle().getSharedServices().registerIfAbsent(
+            TestTasksLimiterBuildService.class.getName()
+                + '-' + System.identityHashCode(TestTasksLimiterBuildService.class),
+            TestTasksLimiterBuildService.class,
+            spec -> spec.getMaxParallelUsages().set(Math.max(maxParallelTestTasks, 1))
+        );
+    }
+
+    /**
+     * Durations are stored in Gradle user home, as build dirs of other projects can't be accessed
+     * with isolated projects. So, durations also survive cleaning of the build dir.
+     * Every build has its own file, identified by the root dir of the build.
+     */
+    static File getTestTaskDurationsStoreFile(Project project) {
+        var buildId = UUID.nameUUIDFromBytes(project.getRootDir().getAbsolutePath().getBytes(UTF_8));
+        return new File(
+            project.getGradle().getGradleUserHomeDir(),
+            "test-source-sets/test-task-durations/" + buildId + ".properties"
+        );
+    }
+
+    private static Provider<TestTaskDurationsBuildService> registerTestTaskDurationsBuildService(Project project) {
+        var storeFile = getTestTaskDurationsStoreFile(project);
+        return project.getGradle().getSharedServices().registerIfAbsent(
+            TestTaskDurationsBuildService.class.getName()
+                + '-' + System.identityHashCode(TestTaskDurationsBuildService.class),
+            TestTaskDurationsBuildService.class,
+            spec -> spec.getParameters().getStoreFile().fileValue(storeFile)
+        );
+    }
+
+}
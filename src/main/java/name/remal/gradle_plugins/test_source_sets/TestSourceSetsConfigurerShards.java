@@ -0,0 +1,249 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static lombok.AccessLevel.PRIVATE;
+import static name.remal.gradle_plugins.test_source_sets.TaskRegistrationUtils.isTaskRegistered;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsPlugin.ALL_TESTS_TASK_NAME;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsPlugin.configureTestTask;
+import static name.remal.gradle_plugins.test_source_sets.TestTaskNameUtils.getTestTaskName;
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtensions;
+import static name.remal.gradle_plugins.toolkit.ObjectUtils.doNotInline;
+import static name.remal.gradle_plugins.toolkit.ProjectUtils.afterEvaluateOrNow;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+import lombok.NoArgsConstructor;
+import org.gradle.api.Project;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.plugins.jvm.JvmTestSuite;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.reflect.TypeOf;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.TaskCollection;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.testing.base.TestingExtension;
+import org.jspecify.annotations.Nullable;
+
+@NoArgsConstructor(access = PRIVATE)
+abstract class TestSourceSetsConfigurerShards {
+
+    public static final String TEST_SHARDS_EXTENSION_NAME = doNotInline("testShards");
+
+    public static final String TEST_TASKS_EXTENSION_NAME = doNotInline("testTasks");
+
+    public static final String TEST_SHARDS_DURATIONS_FILE_NAME = doNotInline("test-shards-durations.properties");
+
+    private static final TypeOf<Property<Integer>> TEST_SHARDS_EXTENSION_TYPE = new TypeOf<>() { };
+
+    private static final TypeOf<TaskCollection<Test>> TEST_TASKS_EXTENSION_TYPE = new TypeOf<>() { };
+
+    private static final Pattern SHARD_NUMBER = Pattern.compile("\\d+");
+
+
+    /**
+     * Shard tasks are registered after the project is evaluated, as the number of shards must be known by then.
+     */
+    public static void configureShards(Project project, ConfigurationProfiler profiler) {
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        testSourceSets.configureEach(profiler.wrap("configureShards", testSourceSet -> {
+            var shards = project.getObjects().property(Integer.class).convention(1);
+            getExtensions(testSourceSet).add(TEST_SHARDS_EXTENSION_TYPE, TEST_SHARDS_EXTENSION_NAME, shards);
+            getExtensions(testSourceSet).add(
+                TEST_TASKS_EXTENSION_TYPE,
+                TEST_TASKS_EXTENSION_NAME,
+                getAllTestTasks(project, testSourceSet)
+            );
+        }));
+
+        afterEvaluateOrNow(project, __ ->
+            testSourceSets.configureEach(profiler.wrap("configureShards", testSourceSet -> {
+                var shardsCount = getShardsCount(testSourceSet);
+                if (shardsCount > 1) {
+                    registerShardTasks(project, testSourceSet, shardsCount);
+                }
+            }))
+        );
+    }
+
+    private static int getShardsCount(SourceSet testSourceSet) {
+        @SuppressWarnings("unchecked")
+        var shards = (Property<Integer>) getExtensions(testSourceSet).findByName(TEST_SHARDS_EXTENSION_NAME);
+        if (shards == null) {
+            return 1;
+        }
+
+        shards.finalizeValue();
+        return Math.max(shards.getOrElse(1), 1);
+    }
+
+    /**
+     * Returns names of the tasks running tests of the test source set:
+     * the shard tasks if the test source set is sharded, or its {@link Test} task otherwise.
+     *
+     * <p>Must be called after the project is evaluated.
+     */
+    public static List<String> getTestTaskNames(SourceSet testSourceSet) {
+        var shardsCount = getShardsCount(testSourceSet);
+        if (shardsCount <= 1) {
+            return List.of(getTestTaskName(testSourceSet));
+        }
+
+        List<String> names = new ArrayList<>(shardsCount);
+        for (int shardNumber = 1; shardNumber <= shardsCount; ++shardNumber) {
+            names.add(getShardTaskName(testSourceSet, shardNumber));
+        }
+        return names;
+    }
+
+    public static String getShardTaskName(SourceSet testSourceSet, int shardNumber) {
+        return testSourceSet.getName() + "Shard" + shardNumber;
+    }
+
+    public static String getShardsPlanTaskName(SourceSet testSourceSet) {
+        return testSourceSet.getName() + "ShardsPlan";
+    }
+
+    public static String getShardsDurationsTaskName(SourceSet testSourceSet) {
+        return testSourceSet.getName() + "ShardsDurations";
+    }
+
+
+    /**
+     * Returns all {@link Test} tasks of the test source set: its test task and its shard tasks.
+     * The tasks are not realized.
+     */
+    public static TaskCollection<Test> getAllTestTasks(Project project, SourceSet testSourceSet) {
+        var testTaskName = getTestTaskName(testSourceSet);
+        var shardTaskNamePrefix = testSourceSet.getName() + "Shard";
+        return project.getTasks().withType(Test.class).matching(task -> {
+            var name = task.getName();
+            return name.equals(testTaskName)
+                || (name.startsWith(shardTaskNamePrefix)
+                && SHARD_NUMBER.matcher(name.substring(shardTaskNamePrefix.length())).matches());
+        });
+    }
+
+
+    /**
+     * Returns the file with test classes of the shard task, written by {@link TestShardsPlan},
+     * or {@code null} if the task is not a shard task of the test source set.
+     */
+    @Nullable
+    public static Provider<RegularFile> getShardFile(Project project, SourceSet testSourceSet, String testTaskName) {
+        var shardTaskNamePrefix = testSourceSet.getName() + "Shard";
+        if (!testTaskName.startsWith(shardTaskNamePrefix)) {
+            return null;
+        }
+
+        var shardNumber = testTaskName.substring(shardTaskNamePrefix.length());
+        if (!SHARD_NUMBER.matcher(shardNumber).matches()) {
+            return null;
+        }
+
+        var shardFileName = TestShardsPlan.getShardFileName(Integer.parseInt(shardNumber));
+        return project.getTasks().named(getShardsPlanTaskName(testSourceSet), TestShardsPlan.class)
+            .flatMap(task -> task.getOutputDir().file(shardFileName));
+    }
+
+
+    private static void registerShardTasks(Project project, SourceSet testSourceSet, int shardsCount) {
+        var tasks = project.getTasks();
+        var testTask = tasks.named(getTestTaskName(testSourceSet), Test.class);
+        var durationsFile = project.getLayout().getProjectDirectory().file(
+            "src/" + testSourceSet.getName() + "/" + TEST_SHARDS_DURATIONS_FILE_NAME
+        );
+
+        tasks.register(getShardsDurationsTaskName(testSourceSet), TestShardsDurations.class, task -> {
+            task.setDescription("Writes durations of " + testSourceSet.getName() + " test classes for shards planning");
+            task.getDurationsFile().convention(durationsFile);
+
+            // Results dirs are resolved without task dependencies, as only previous runs are interesting here
+            task.getTestResultsDirs().from(project.provider(() -> getJunitXmlDir(testTask.get())));
+            for (int shardNumber = 1; shardNumber <= shardsCount; ++shardNumber) {
+                var shardTaskName = getShardTaskName(testSourceSet, shardNumber);
+                task.getTestResultsDirs().from(project.provider(() ->
+                    getJunitXmlDir(tasks.named(shardTaskName, Test.class).get())
+                ));
+            }
+        });
+
+        var planTask = tasks.register(getShardsPlanTaskName(testSourceSet), TestShardsPlan.class, task -> {
+            task.setDescription("Assigns " + testSourceSet.getName() + " test classes to shards by duration");
+            task.getShards().set(shardsCount);
+            task.getTestClassesDirs().from(testSourceSet.getOutput().getClassesDirs());
+            task.getDurationsFile().convention(project.provider(() ->
+                durationsFile.getAsFile().isFile() ? durationsFile : null
+            ));
+            task.getOutputDir().convention(
+                project.getLayout().getBuildDirectory().dir("test-shards/" + testSourceSet.getName())
+            );
+        });
+
+        List<String> shardTaskNames = new ArrayList<>(shardsCount);
+        for (int shardNumber = 1; shardNumber <= shardsCount; ++shardNumber) {
+            var shardFileName = TestShardsPlan.getShardFileName(shardNumber);
+            var shardFile = planTask.flatMap(task -> task.getOutputDir().file(shardFileName));
+            var shardDescription = "Runs " + testSourceSet.getName() + " tests, shard " + shardNumber
+                + " of " + shardsCount;
+            var shardTaskName = getShardTaskName(testSourceSet, shardNumber);
+            shardTaskNames.add(shardTaskName);
+            registerShardTask(project, testSourceSet, shardTaskName);
+            tasks.named(shardTaskName, Test.class).configure(task -> {
+                task.setDescription(shardDescription);
+                task.getInputs().file(shardFile)
+                    .withPropertyName("testShard");
+                task.getFilter().setFailOnNoMatchingTests(false);
+                var file = shardFile.get().getAsFile();
+                task.onlyIf(new TestShardFilter.IsNotEmpty(file));
+                task.doFirst(new TestShardFilter(file));
+            });
+        }
+
+        // The shards replace the test task of the test source set, so tests are not executed twice
+        var testTaskName = getTestTaskName(testSourceSet);
+        tasks.named(ALL_TESTS_TASK_NAME).configure(task -> {
+            var dependsOn = new LinkedHashSet<>(task.getDependsOn());
+            dependsOn.remove(testTaskName);
+            dependsOn.addAll(shardTaskNames);
+            task.setDependsOn(dependsOn);
+        });
+    }
+
+    /**
+     * Shard tasks are configured the same way as the test task of the test source set:
+     * as additional targets of the JVM test suite, or by the plugin's action for test tasks otherwise.
+     * Settings of the test task configured directly are not applied to shard tasks,
+     * see {@link #getAllTestTasks(Project, SourceSet)}.
+     */
+    private static void registerShardTask(Project project, SourceSet testSourceSet, String shardTaskName) {
+        if (project.getPluginManager().hasPlugin("jvm-test-suite")) {
+            registerTestSuiteTarget(project, testSourceSet, shardTaskName);
+        }
+
+        if (!isTaskRegistered(project.getTasks(), shardTaskName)) {
+            project.getTasks().register(shardTaskName, Test.class, task ->
+                configureTestTask(project, testSourceSet, task)
+            );
+        }
+    }
+
+    @SuppressWarnings({"UnstableApiUsage", "ReferenceEquality"})
+    private static void registerTestSuiteTarget(Project project, SourceSet testSourceSet, String targetName) {
+        var testing = getExtension(project, TestingExtension.class);
+        var testSuite = testing.getSuites().findByName(testSourceSet.getName());
+        if (testSuite instanceof JvmTestSuite
+            && ((JvmTestSuite) testSuite).getSources() == testSourceSet
+        ) {
+            ((JvmTestSuite) testSuite).getTargets().create(targetName);
+        }
+    }
+
+    private static File getJunitXmlDir(Test task) {
+        return task.getReports().getJunitXml().getOutputLocation().get().getAsFile();
+    }
+
+}
@@ -0,0 +1,59 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static lombok.AccessLevel.PRIVATE;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerShards.getAllTestTasks;
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+
+import java.util.HashSet;
+import lombok.NoArgsConstructor;
+import org.gradle.api.Project;
+
+@NoArgsConstructor(access = PRIVATE)
+abstract class TestSourceSetsConfigurerTemplates {
+
+    /**
+     * Templates are registered by the plugin applied to settings.
+     * They are compiled once per build, and every project only looks them up by test source set name.
+     *
+     * <p>Test source sets of templates are registered when the plugin is applied,
+     * so build scripts can configure them and their configurations and tasks.
+     * Plugins creating test source sets that can also be defined by templates should use
+     * {@link TestSourceSetContainer#maybeCreate(String)}.
+     */
+    public static void configureTemplates(Project project, ConfigurationProfiler profiler) {
+        var templates = project.getGradle().getExtensions().findByType(TestSourceSetTemplates.class);
+        if (templates == null) {
+            return;
+        }
+
+        var compiledTemplates = templates.compile();
+        if (compiledTemplates.isEmpty()) {
+            return;
+        }
+
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        testSourceSets.configureEach(profiler.wrap("configureTemplates", testSourceSet -> {
+            var template = compiledTemplates.get(testSourceSet.getName());
+            if (template == null) {
+                return;
+            }
+
+            template.getSourceSetActions().forEach(action -> action.execute(testSourceSet));
+
+            var testTaskActions = template.getTestTaskActions();
+            if (!testTaskActions.isEmpty()) {
+                getAllTestTasks(project, testSourceSet).configureEach(task ->
+                    testTaskActions.forEach(action -> action.execute(task))
+                );
+            }
+        }));
+
+        var existingNames = new HashSet<>(testSourceSets.getNames());
+        for (var name : compiledTemplates.keySet()) {
+            if (!existingNames.contains(name)) {
+                testSourceSets.register(name);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static lombok.AccessLevel.PRIVATE;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerShards.getShardFile;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerShards.getTestTaskNames;
+import static name.remal.gradle_plugins.test_source_sets.TestTaskNameUtils.getTestTaskName;
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static name.remal.gradle_plugins.toolkit.ProjectUtils.afterEvaluateOrNow;
+
+import java.util.LinkedHashSet;
+import lombok.NoArgsConstructor;
+import name.remal.gradle_plugins.test_source_sets.TestClassResultsCache.ExcludeCachedTestClasses;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.testing.Test;
+
+@NoArgsConstructor(access = PRIVATE)
+abstract class TestSourceSetsConfigurerTestClassResultsCache {
+
+    /**
+     * Results are cached for all test tasks of test source sets, including shard tasks.
+     * Results of a test class are cached only if the test class passes.
+     * Results are stored by a finalizer task of every test task, so they are stored even if some tests fail.
+     */
+    public static void configureTestClassResultsCache(Project project, ConfigurationProfiler profiler) {
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        afterEvaluateOrNow(project, __ -> {
+            var testClassResultsCache = testSourceSets.getTestClassResultsCache();
+            testClassResultsCache.finalizeValue();
+            if (!testClassResultsCache.getOrElse(false)) {
+                return;
+            }
+
+            testSourceSets.configureEach(profiler.wrap("configureTestClassResultsCache", testSourceSet ->
+                configureTestClassResultsCache(project, testSourceSet)
+            ));
+        });
+    }
+
+    public static String getTestClassResultsKeysTaskName(SourceSet testSourceSet) {
+        return testSourceSet.getName() + "TestClassResultsKeys";
+    }
+
+    public static String getTestClassResultsStoreTaskName(String testTaskName) {
+        return testTaskName + "ClassResultsStore";
+    }
+
+    private static void configureTestClassResultsCache(Project project, SourceSet testSourceSet) {
+        var dir = project.getLayout().getBuildDirectory().dir("test-class-results/" + testSourceSet.getName());
+        var keysTask = project.getTasks().register(
+            getTestClassResultsKeysTaskName(testSourceSet),
+            TestClassResultsKeys.class,
+            task -> {
+                task.setDescription(
+                    "Calculates keys of " + testSourceSet.getName() + " test classes for results cache"
+                );
+                task.getTestClassesDirs().from(testSourceSet.getOutput().getClassesDirs());
+                task.getClasspath().from(testSourceSet.getRuntimeClasspath());
+                task.getIndexFile().convention(dir.map(it -> it.file("index.txt")));
+                task.getKeysFile().convention(dir.map(it -> it.file("keys.txt")));
+            }
+        );
+
+        var testTaskNames = new LinkedHashSet<String>();
+        testTaskNames.add(getTestTaskName(testSourceSet));
+        testTaskNames.addAll(getTestTaskNames(testSourceSet));
+        for (var testTaskName : testTaskNames) {
+            var testTask = project.getTasks().named(testTaskName, Test.class);
+            var testTaskKeysFile = dir.map(it -> it.file("test-task-keys/" + testTaskName + ".txt"));
+            var shardFile = getShardFile(project, testSourceSet, testTaskName);
+            var storeTask = project.getTasks().register(
+                getTestClassResultsStoreTaskName(testTaskName),
+                TestClassResultsStore.class,
+                task -> {
+                    task.setDescription("Caches results of passed test classes of " + testTaskName + " task");
+                    task.getTestTaskKeysFile().convention(testTaskKeysFile);
+                    task.getCacheDir().convention(dir.map(it -> it.dir("cache")));
+                    if (shardFile != null) {
+                        task.getShardFile().convention(shardFile);
+                    }
+                    task.getJunitXmlReportsDir().convention(testTask.flatMap(it ->
+                        it.getReports().getJunitXml().getOutputLocation()
+                    ));
+                    task.getJunitXmlReportsRequired().convention(testTask.flatMap(it ->
+                        it.getReports().getJunitXml().getRequired()
+                    ));
+                }
+            );
+
+            testTask.configure(task -> {
+                var keysFile = keysTask.flatMap(TestClassResultsKeys::getKeysFile);
+                task.getInputs().file(keysFile)
+                    .withPropertyName("testClassResultsKeys");
+                task.getFilter().setFailOnNoMatchingTests(false);
+
+                task.doFirst(new ExcludeCachedTestClasses(
+                    keysFile.get().getAsFile(),
+                    dir.get().dir("cache").getAsFile(),
+                    testTaskKeysFile.get().getAsFile()
+                ));
+                task.finalizedBy(storeTask);
+            });
+        }
+    }
+
+}
@@ -1,13 +1,24 @@
 package name.remal.gradle_plugins.test_source_sets;
 
 import static java.lang.String.format;
-import static java.util.stream.Collectors.toList;
 import static name.remal.gradle_plugins.build_time_constants.api.BuildTimeConstants.getStringProperty;
+import static name.remal.gradle_plugins.test_source_sets.ConfigurationProfiler.createConfigurationProfiler;
+import static name.remal.gradle_plugins.test_source_sets.SourceSetConfigurationNameGetters.getConfigurationNames;
+import static name.remal.gradle_plugins.test_source_sets.TaskRegistrationUtils.isTaskRegistered;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerAffectedTests.configureAffectedTests;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerAllProjectsTests.configureAllProjectsTests;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerAllProjectsTests.registerProjectDirs;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerChangedFiles.configureChangedFiles;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerClassDataSharing.configureClassDataSharing;
 import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerEclipse.configureEclipse;
 import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerIdea.configureIdea;
 import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerJacoco.configureJacoco;
 import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerJavaGradlePlugin.configureJavaGradlePlugin;
 import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerKotlin.configureKotlinTestSourceSets;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerScheduling.configureScheduling;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerShards.configureShards;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerTemplates.configureTemplates;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerTestClassResultsCache.configureTestClassResultsCache;
 import static name.remal.gradle_plugins.test_source_sets.TestTaskNameUtils.getTestTaskName;
 import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.addExtension;
 import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
@@ -15,35 +26,33 @@ import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExten
 import static name.remal.gradle_plugins.toolkit.GradleVersionUtils.isCurrentGradleVersionGreaterThanOrEqualTo;
 import static name.remal.gradle_plugins.toolkit.GradleVersionUtils.isCurrentGradleVersionLessThan;
 import static name.remal.gradle_plugins.toolkit.ObjectUtils.doNotInline;
-import static name.remal.gradle_plugins.toolkit.ProxyUtils.toDynamicInterface;
+import static name.remal.gradle_plugins.toolkit.ProjectUtils.afterEvaluateOrNow;
 import static org.gradle.api.plugins.JavaPlugin.TEST_TASK_NAME;
 import static org.gradle.api.tasks.SourceSet.MAIN_SOURCE_SET_NAME;
 import static org.gradle.api.tasks.SourceSet.TEST_SOURCE_SET_NAME;
 import static org.gradle.language.base.plugins.LifecycleBasePlugin.VERIFICATION_GROUP;
 
-import java.lang.reflect.Method;
-import java.util.List;
-import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
-import java.util.regex.Pattern;
-import java.util.stream.Stream;
 import lombok.CustomLog;
-import lombok.SneakyThrows;
 import name.remal.gradle_plugins.toolkit.AbstractSettingsAwarePlugin;
 import org.gradle.api.Project;
+import org.gradle.api.initialization.Settings;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.plugins.JavaPlugin;
 import org.gradle.api.plugins.JavaPluginExtension;
 import org.gradle.api.plugins.UnknownPluginException;
 import org.gradle.api.plugins.jvm.JvmTestSuite;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.reflect.TypeOf;
 import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.SourceSetContainer;
 import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.testing.Test;
 import org.gradle.testing.base.TestingExtension;
+import org.jspecify.annotations.Nullable;
 
 @CustomLog
 public class TestSourceSetsPlugin extends AbstractSettingsAwarePlugin {
@@ -52,8 +61,12 @@ public class TestSourceSetsPlugin extends AbstractSettingsAwarePlugin {
 
     public static final String ALL_TESTS_TASK_NAME = doNotInline("allTests");
 
+    public static final String ALL_PROJECTS_TESTS_TASK_NAME = doNotInline("allProjectsTests");
+
     public static final String TEST_TASK_EXTENSION_NAME = doNotInline("testTask");
 
+    public static final String TEST_SOURCE_SET_TEMPLATES_EXTENSION_NAME = doNotInline("testSourceSetTemplates");
+
 
     private static final boolean IS_TEST_TASK_CONVENTION_MAPPING_SUPPORTED =
         isCurrentGradleVersionLessThan("7.3");
@@ -62,6 +75,40 @@ public class TestSourceSetsPlugin extends AbstractSettingsAwarePlugin {
         isCurrentGradleVersionGreaterThanOrEqualTo("6.4");
 
 
+    @Nullable
+    private ConfigurationExtendsFromWiring configurationExtendsFromWiring;
+
+    /**
+     * Returns the wiring of configurations of the project the plugin is applied to.
+     * It's exposed only for tests.
+     */
+    @Nullable
+    ConfigurationExtendsFromWiring getConfigurationExtendsFromWiring() {
+        return configurationExtendsFromWiring;
+    }
+
+
+    /**
+     * Test source set templates are registered as an extension of both {@link Settings} (for DSL)
+     * and {@link org.gradle.api.invocation.Gradle} (to be read by projects).
+     */
+    @Override
+    protected void applyToSettings(Settings settings) {
+        var templates = settings.getExtensions().create(
+            TEST_SOURCE_SET_TEMPLATES_EXTENSION_NAME,
+            TestSourceSetTemplates.class
+        );
+        settings.getGradle().getExtensions().add(
+            TestSourceSetTemplates.class,
+            TEST_SOURCE_SET_TEMPLATES_EXTENSION_NAME,
+            templates
+        );
+
+        registerProjectDirs(settings);
+
+        super.applyToSettings(settings);
+    }
+
     @Override
     protected void applyToProject(Project project) {
         project.getPluginManager().apply(JavaPlugin.class);
@@ -79,23 +126,35 @@ public class TestSourceSetsPlugin extends AbstractSettingsAwarePlugin {
         var testSourceSet = sourceSets.getByName(TEST_SOURCE_SET_NAME);
         testSourceSets.add(testSourceSet);
 
-        configureConfigurations(project);
-        configureClasspaths(project);
-        configureTestTasks(project);
-        configureTestTaskExtensions(project);
-        configureJacoco(project);
-        configureIdea(project);
-        configureEclipse(project);
-
-        configureKotlinTestSourceSets(project);
-        configureJavaGradlePlugin(project);
+        var profiler = createConfigurationProfiler(project);
+        profiler.run("configureConfigurations", () ->
+            configurationExtendsFromWiring = configureConfigurations(project, profiler)
+        );
+        profiler.run("configureClasspaths", () -> configureClasspaths(project, profiler));
+        profiler.run("configureTestTasks", () -> configureTestTasks(project, profiler));
+        profiler.run("configureTestTaskExtensions", () -> configureTestTaskExtensions(project, profiler));
+        profiler.run("configureShards", () -> configureShards(project, profiler));
+        profiler.run("configureAffectedTests", () -> configureAffectedTests(project, profiler));
+        profiler.run("configureTestClassResultsCache", () -> configureTestClassResultsCache(project, profiler));
+        profiler.run("configureChangedFiles", () -> configureChangedFiles(project, profiler));
+        profiler.run("configureClassDataSharing", () -> configureClassDataSharing(project, profiler));
+        profiler.run("configureScheduling", () -> configureScheduling(project, profiler));
+        profiler.run("configureAllProjectsTests", () -> configureAllProjectsTests(project, profiler));
+        profiler.run("configureJacoco", () -> configureJacoco(project, profiler));
+        profiler.run("configureIdea", () -> configureIdea(project, profiler));
+        profiler.run("configureEclipse", () -> configureEclipse(project, profiler));
+
+        profiler.run("configureKotlinTestSourceSets", () -> configureKotlinTestSourceSets(project, profiler));
+        profiler.run("configureJavaGradlePlugin", () -> configureJavaGradlePlugin(project, profiler));
+
+        profiler.run("configureTemplates", () -> configureTemplates(project, profiler));
+
+        realizeRegisteredTestSourceSets(project);
     }
 
-    @SneakyThrows
     @SuppressWarnings("Slf4jFormatShouldBeConst")
     private static TestSourceSetContainer createTestSourceSetContainer(Project project) {
-        var testSuffixCheck = project.getObjects().property(TestSuffixCheckMode.class);
-        testSuffixCheck.convention(TestSuffixCheckMode.FAIL);
+        var testSuffixCheck = new AtomicReference<Provider<TestSuffixCheckMode>>();
 
         Consumer<String> checkTestSourceSetName = name -> {
             if (!name.endsWith("Test")) {
@@ -107,7 +166,7 @@ public class TestSourceSetsPlugin extends AbstractSettingsAwarePlugin {
                     name,
                     getStringProperty("repository.html-url")
                 );
-                var testSuffixCheckMode = testSuffixCheck.getOrNull();
+                var testSuffixCheckMode = testSuffixCheck.get().getOrNull();
                 if (testSuffixCheckMode == TestSuffixCheckMode.FAIL) {
                     throw new InvalidTestSourceSetNameSuffix(message);
                 } else if (testSuffixCheckMode == TestSuffixCheckMode.WARN) {
@@ -128,10 +187,9 @@ public class TestSourceSetsPlugin extends AbstractSettingsAwarePlugin {
         sourceSets.whenObjectRemoved(testSourceSets::remove);
         testSourceSets.whenObjectRemoved(sourceSets::remove);
 
-        var getTestSuffixCheckMethod = TestSourceSetContainer.class.getMethod("getTestSuffixCheck");
-        return toDynamicInterface(testSourceSets, TestSourceSetContainer.class, invocationHandler -> {
-            invocationHandler.add(getTestSuffixCheckMethod::equals, (proxy, method, args) -> testSuffixCheck);
-        });
+        var container = project.getObjects().newInstance(DefaultTestSourceSetContainer.class, testSourceSets);
+        testSuffixCheck.set(container.getTestSuffixCheck());
+        return container;
     }
 
     private static SourceSet createSourceSet(Project project, String name) {
@@ -155,55 +213,46 @@ public class TestSourceSetsPlugin extends AbstractSettingsAwarePlugin {
     }
 
 
-    private static void configureConfigurations(Project project) {
-        var configurations = project.getConfigurations();
+    private static ConfigurationExtendsFromWiring configureConfigurations(
+        Project project,
+        ConfigurationProfiler profiler
+    ) {
+        var wiring = new ConfigurationExtendsFromWiring(project.getConfigurations());
 
         var testSourceSet = getExtension(project, SourceSetContainer.class).getByName(TEST_SOURCE_SET_NAME);
+        var testConfNames = getConfigurationNames(testSourceSet);
         var testSourceSets = getExtension(project, TestSourceSetContainer.class);
         @SuppressWarnings("ReferenceEquality")
         var otherTestSourceSets = testSourceSets.matching(it -> it != testSourceSet);
-        otherTestSourceSets.configureEach(sourceSet ->
-            forConfigurations(testSourceSet, sourceSet, (testConfName, confName) -> {
-                configurations
-                    .matching(it -> it.getName().equals(testConfName))
-                    .all(testConf ->
-                        configurations.matching(it -> it.getName().equals(confName)).all(conf ->
-                            conf.extendsFrom(testConf)
-                        )
-                    );
-            })
-        );
+        otherTestSourceSets.configureEach(profiler.wrap("configureConfigurations", sourceSet ->
+            forConfigurations(testConfNames, sourceSet, (testConfName, confName) ->
+                wiring.extendsFrom(confName, testConfName)
+            )
+        ));
+        return wiring;
     }
 
-    private static final Pattern GET_CONFIGURATION_NAME_METHOD_NAME = Pattern.compile(
-        "^get[A-Z].*[a-z]ConfigurationName$"
-    );
-
-    private static final List<Method> GET_CONFIGURATION_NAME_METHODS = Stream.of(SourceSet.class.getMethods())
-        .filter(it -> GET_CONFIGURATION_NAME_METHOD_NAME.matcher(it.getName()).matches())
-        .collect(toList());
-
-    @SneakyThrows
     private static void forConfigurations(
-        SourceSet sourceSet1,
+        @Nullable String[] confNames1,
         SourceSet sourceSet2,
         BiConsumer<String, String> action
     ) {
-        for (var method : GET_CONFIGURATION_NAME_METHODS) {
-            var confName1 = method.invoke(sourceSet1);
-            var confName2 = method.invoke(sourceSet2);
+        var confNames2 = getConfigurationNames(sourceSet2);
+        for (int i = 0; i < confNames1.length; ++i) {
+            var confName1 = confNames1[i];
+            var confName2 = confNames2[i];
             if (confName1 == null
                 || confName2 == null
-                || Objects.equals(confName1, confName2)
+                || confName1.equals(confName2)
             ) {
                 continue;
             }
 
-            action.accept(confName1.toString(), confName2.toString());
+            action.accept(confName1, confName2);
         }
     }
 
-    private static void configureClasspaths(Project project) {
+    private static void configureClasspaths(Project project, ConfigurationProfiler profiler) {
         var sourceSets = getExtension(project, SourceSetContainer.class);
         var mainSourceSet = sourceSets.getByName(MAIN_SOURCE_SET_NAME);
         var testSourceSet = sourceSets.getByName(TEST_SOURCE_SET_NAME);
@@ -212,7 +261,7 @@ public class TestSourceSetsPlugin extends AbstractSettingsAwarePlugin {
         var testSourceSets = getExtension(project, TestSourceSetContainer.class);
         @SuppressWarnings("ReferenceEquality")
         var otherTestSourceSets = testSourceSets.matching(it -> it != testSourceSet);
-        otherTestSourceSets.configureEach(sourceSet -> {
+        otherTestSourceSets.configureEach(profiler.wrap("configureClasspaths", sourceSet -> {
             sourceSet.setCompileClasspath(
                 mainSourceSet.getOutput()
                     .plus(confs.getByName(sourceSet.getCompileClasspathConfigurationName()))
@@ -222,11 +271,11 @@ public class TestSourceSetsPlugin extends AbstractSettingsAwarePlugin {
                     .plus(mainSourceSet.getOutput())
                     .plus(confs.getByName(sourceSet.getRuntimeClasspathConfigurationName()))
             );
-        });
+        }));
     }
 
 
-    private static void configureTestTasks(Project project) {
+    private static void configureTestTasks(Project project, ConfigurationProfiler profiler) {
         var allTestsTask = project.getTasks().register(
             ALL_TESTS_TASK_NAME, task -> {
                 task.setGroup(VERIFICATION_GROUP);
@@ -236,27 +285,38 @@ public class TestSourceSetsPlugin extends AbstractSettingsAwarePlugin {
         );
 
         var testSourceSets = getExtension(project, TestSourceSetContainer.class);
-        testSourceSets.whenObjectAdded(testSourceSet -> {
+        testSourceSets.configureEach(profiler.wrap("configureTestTasks", testSourceSet -> {
             var testTaskName = getTestTaskName(testSourceSet);
             allTestsTask.configure(it -> it.dependsOn(testTaskName));
 
-            if (project.getTasks().getNames().contains(testTaskName)) {
+            if (isTaskRegistered(project.getTasks(), testTaskName)) {
                 return;
             }
 
             project.getTasks().register(testTaskName, Test.class, task -> {
-                task.setGroup(VERIFICATION_GROUP);
                 task.setDescription("Runs " + testSourceSet.getName() + " tests");
+                configureTestTask(project, testSourceSet, task);
+            });
+        }));
+    }
 
-                if (IS_TEST_TASK_CONVENTION_MAPPING_SUPPORTED) {
-                    configureTestTaskConventionMapping(task, testSourceSet);
-                }
+    /**
+     * Configures a {@link Test} task running tests of the test source set,
+     * if the task is not created by {@code jvm-test-suite} plugin.
+     */
+    static void configureTestTask(Project project, SourceSet testSourceSet, Test task) {
+        task.setGroup(VERIFICATION_GROUP);
 
-                if (IS_MODULARITY_SUPPORTED) {
-                    configureTestTaskModularity(project, task);
-                }
-            });
-        });
+        if (IS_TEST_TASK_CONVENTION_MAPPING_SUPPORTED) {
+            configureTestTaskConventionMapping(task, testSourceSet);
+        } else {
+            task.setTestClassesDirs(testSourceSet.getOutput().getClassesDirs());
+            task.setClasspath(project.files((Callable<FileCollection>) testSourceSet::getRuntimeClasspath));
+        }
+
+        if (IS_MODULARITY_SUPPORTED) {
+            configureTestTaskModularity(project, task);
+        }
     }
 
     private static void configureTestTaskConventionMapping(Test testTask, SourceSet testSourceSet) {
@@ -280,9 +340,9 @@ public class TestSourceSetsPlugin extends AbstractSettingsAwarePlugin {
 
     private static final TypeOf<TaskProvider<Test>> TEST_TASK_EXTENSION_TYPE = new TypeOf<>() { };
 
-    private static void configureTestTaskExtensions(Project project) {
+    private static void configureTestTaskExtensions(Project project, ConfigurationProfiler profiler) {
         var testSourceSets = getExtension(project, TestSourceSetContainer.class);
-        testSourceSets.configureEach(testSourceSet -> {
+        testSourceSets.configureEach(profiler.wrap("configureTestTaskExtensions", testSourceSet -> {
             var testTaskName = getTestTaskName(testSourceSet);
             var testTaskProvider = project.getTasks().named(testTaskName, Test.class);
             getExtensions(testSourceSet).add(
@@ -290,7 +350,24 @@ public class TestSourceSetsPlugin extends AbstractSettingsAwarePlugin {
                 TEST_TASK_EXTENSION_NAME,
                 testTaskProvider
             );
-        });
+        }));
+    }
+
+
+    /**
+     * Test source sets registered via {@link TestSourceSetContainer#register(String)} are not created
+     * until something requests them. However, Gradle has to know about {@link Test} tasks, configurations,
+     * and compilation tasks of all source sets before the task graph is calculated.
+     * So, registered test source sets that haven't been requested by anything during the project evaluation
+     * are created after the project is evaluated.
+     * Test source sets registered after that are created immediately.
+     *
+     * <p>They can't be created only when their tasks are requested, as source sets and configurations
+     * can't be created while tasks are being configured.
+     */
+    private static void realizeRegisteredTestSourceSets(Project project) {
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        afterEvaluateOrNow(project, __ -> testSourceSets.all(___ -> { }));
     }
 
 }
@@ -0,0 +1,231 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newBufferedReader;
+import static java.nio.file.Files.newBufferedWriter;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerScheduling.orderTaskNames;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import javax.inject.Inject;
+import lombok.SneakyThrows;
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.build.event.BuildEventsListenerRegistry;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationCompletionListener;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+import org.gradle.tooling.events.task.TaskSkippedResult;
+import org.gradle.tooling.events.task.TaskSuccessResult;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Records durations of executed test tasks, and stores them across builds.
+ *
+ * <p>Only tasks marked by {@link TrackTestTaskDuration} are recorded.
+ * Up-to-date, skipped, and from-cache executions are not recorded, as they say nothing about test duration.
+ * Stored durations are smoothed, so a single slow build doesn't change the order of test tasks much.
+ */
+public abstract class TestTaskDurationsBuildService
+    implements BuildService<TestTaskDurationsBuildService.Params>, OperationCompletionListener, AutoCloseable {
+
+    public interface Params extends BuildServiceParameters {
+
+        RegularFileProperty getStoreFile();
+
+    }
+
+
+    private static final double SMOOTHING_FACTOR = 0.5;
+
+    @Nullable
+    private Map<String, Long> storedDurations;
+
+    private final Set<String> trackedTaskPaths = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Long> recordedDurations = new ConcurrentHashMap<>();
+
+    private final Set<String> registeredTestTaskPaths = new ConcurrentSkipListSet<>();
+
+    @Nullable
+    private List<String> orderedTestTaskPaths;
+
+    /**
+     * Returns the stored duration of the task in milliseconds, or {@code null} if it's unknown.
+     */
+    @Nullable
+    public Long getDuration(String taskPath) {
+        return getStoredDurations().get(taskPath);
+    }
+
+    /**
+     * Registers test tasks for the global order. Projects can be configured in parallel,
+     * so test tasks are registered concurrently.
+     */
+    public void registerTestTaskPaths(Collection<String> taskPaths) {
+        registeredTestTaskPaths.addAll(taskPaths);
+        synchronized (this) {
+            orderedTestTaskPaths = null;
+        }
+    }
+
+    /**
+     * Returns the path of the test task preceding the given one in the global order of all registered test tasks,
+     * or {@code null} if there is no such task.
+     *
+     * <p>The global order is calculated once, when the task graph is built.
+     */
+    @Nullable
+    public synchronized String getPrecedingTestTaskPath(String taskPath, TestTasksOrder order) {
+        if (orderedTestTaskPaths == null) {
+            orderedTestTaskPaths = orderTaskNames(new ArrayList<>(registeredTestTaskPaths), this::getDuration, order);
+        }
+
+        var index = orderedTestTaskPaths.indexOf(taskPath);
+        return index > 0 ? orderedTestTaskPaths.get(index - 1) : null;
+    }
+
+    public void track(String taskPath) {
+        trackedTaskPaths.add(taskPath);
+    }
+
+    @Override
+    public void onFinish(FinishEvent event) {
+        if (!(event instanceof TaskFinishEvent)) {
+            return;
+        }
+
+        var taskPath = ((TaskFinishEvent) event).getDescriptor().getTaskPath();
+        if (!trackedTaskPaths.contains(taskPath)) {
+            return;
+        }
+
+        var result = ((TaskFinishEvent) event).getResult();
+        if (result instanceof TaskSkippedResult) {
+            return;
+        }
+        if (result instanceof TaskSuccessResult) {
+            var successResult = (TaskSuccessResult) result;
+            if (successResult.isUpToDate() || successResult.isFromCache()) {
+                return;
+            }
+        }
+
+        recordedDurations.put(taskPath, result.getEndTime() - result.getStartTime());
+    }
+
+
+    @Override
+    @SneakyThrows
+    public synchronized void close() {
+        if (recordedDurations.isEmpty()) {
+            return;
+        }
+
+        var durations = new TreeMap<>(getStoredDurations());
+        recordedDurations.forEach((taskPath, duration) ->
+            durations.merge(taskPath, duration, (stored, recorded) ->
+                Math.round(stored * (1 - SMOOTHING_FACTOR) + recorded * SMOOTHING_FACTOR)
+            )
+        );
+
+        var properties = new Properties();
+        durations.forEach((taskPath, duration) -> properties.setProperty(taskPath, String.valueOf(duration)));
+
+        var storePath = getStorePath();
+        createDirectories(storePath.getParent());
+        var tempPath = storePath.resolveSibling(storePath.getFileName() + ".tmp");
+        try (var writer = newBufferedWriter(tempPath, UTF_8)) {
+            properties.store(writer, null);
+        }
+        move(tempPath, storePath, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    private synchronized Map<String, Long> getStoredDurations() {
+        if (storedDurations == null) {
+            storedDurations = readStoredDurations(getStorePath());
+        }
+        return storedDurations;
+    }
+
+    private Path getStorePath() {
+        return getParameters().getStoreFile().get().getAsFile().toPath();
+    }
+
+    private static Map<String, Long> readStoredDurations(Path storePath) {
+        Map<String, Long> durations = new TreeMap<>();
+        if (!isRegularFile(storePath)) {
+            return durations;
+        }
+
+        var properties = new Properties();
+        try (var reader = newBufferedReader(storePath, UTF_8)) {
+            properties.load(reader);
+        } catch (Exception e) {
+            // ignore a broken store, it will be overwritten
+            return durations;
+        }
+
+        for (var taskPath : properties.stringPropertyNames()) {
+            try {
+                durations.put(taskPath, Long.parseLong(properties.getProperty(taskPath)));
+            } catch (NumberFormatException ignored) {
+                // skip broken entries
+            }
+        }
+        return durations;
+    }
+
+
+    /**
+     * Marks the task for recording of its duration.
+     */
+    static class TrackTestTaskDuration implements Action<Task> {
+
+        private final Provider<TestTaskDurationsBuildService> service;
+
+        public TrackTestTaskDuration(Provider<TestTaskDurationsBuildService> service) {
+            this.service = service;
+        }
+
+        @Override
+        public void execute(Task task) {
+            service.get().track(task.getPath());
+        }
+
+    }
+
+
+    /**
+     * {@link BuildEventsListenerRegistry} can only be injected, so this class is instantiated
+     * by {@link org.gradle.api.model.ObjectFactory}.
+     */
+    public abstract static class ListenerRegistrar {
+
+        @Inject
+        protected abstract BuildEventsListenerRegistry getRegistry();
+
+        public void register(Provider<TestTaskDurationsBuildService> service) {
+            getRegistry().onTaskCompletion(service);
+        }
+
+    }
+
+}
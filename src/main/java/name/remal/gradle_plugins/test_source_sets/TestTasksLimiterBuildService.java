@@ -0,0 +1,12 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Limits the number of test tasks of all projects executed in parallel.
+ *
+ * <p>The service doesn't do anything, the limit is set via {@code maxParallelUsages}.
+ */
+public abstract class TestTasksLimiterBuildService implements BuildService<BuildServiceParameters.None> {
+}
@@ -0,0 +1,20 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+public enum TestTasksOrder {
+
+    /**
+     * Don't order test tasks
+     */
+    DEFAULT,
+
+    /**
+     * Run test tasks that took longer in previous builds first
+     */
+    LONGEST_FIRST,
+
+    /**
+     * Run test tasks that took less time in previous builds first, so failures are reported sooner
+     */
+    SHORTEST_FIRST,
+
+}
@@ -0,0 +1,148 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.write;
+import static java.nio.file.Files.writeString;
+import static name.remal.gradle_plugins.test_source_sets.AffectedTestsAnalyzer.index;
+import static name.remal.gradle_plugins.test_source_sets.AffectedTestsAnalyzer.selectAffectedTests;
+import static name.remal.gradle_plugins.test_source_sets.ClassDependenciesParserTest.readClassBytes;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import lombok.SneakyThrows;
+import name.remal.gradle_plugins.test_source_sets.AffectedTestsAnalyzer.ClassEntry;
+import name.remal.gradle_plugins.test_source_sets.AffectedTestsAnalyzer.State;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AffectedTestsAnalyzerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @SneakyThrows
+    void indexAndReadState() {
+        var classesDir = tempDir.resolve("classes");
+        writeClass(classesDir, ClassDependenciesParserTest.Sample.class);
+        writeString(createDirectories(classesDir.resolve("res")).resolve("file.txt"), "content");
+
+        var state = index(List.of(classesDir.toFile(), tempDir.resolve("missing").toFile()), null);
+        var sampleEntry = state.classes.get(ClassDependenciesParserTest.Sample.class.getName());
+        assertNotNull(sampleEntry);
+        assertThat(sampleEntry.dependencies)
+            .contains(ClassDependenciesParserTest.Dependency.class.getName());
+        assertThat(state.resources).hasSize(1);
+
+        var stateFile = tempDir.resolve("state.txt").toFile();
+        state.write(stateFile);
+        var readState = State.read(stateFile);
+        assertNotNull(readState);
+        assertThat(readState.classes.keySet()).isEqualTo(state.classes.keySet());
+        assertThat(readState.resources).isEqualTo(state.resources);
+
+        var reindexedState = index(List.of(classesDir.toFile()), readState);
+        assertSame(
+            readState.classes.get(ClassDependenciesParserTest.Sample.class.getName()),
+            reindexedState.classes.get(ClassDependenciesParserTest.Sample.class.getName())
+        );
+    }
+
+    @Test
+    void allTestsAreSelectedWithoutBaseline() {
+        assertNull(selectAffectedTests(List.of(testClassesDir()), state(), null));
+    }
+
+    @Test
+    void allTestsAreSelectedIfResourcesChanged() {
+        var baseline = state();
+        var state = state();
+        state.resources.put("/res/file.txt", "changed");
+        assertNull(selectAffectedTests(List.of(testClassesDir()), state, baseline));
+    }
+
+    @Test
+    void noTestsAreSelectedIfNothingChanged() {
+        assertThat(selectAffectedTests(List.of(testClassesDir()), state(), state()))
+            .isEmpty();
+    }
+
+    @Test
+    void testsTransitivelyDependingOnChangedClassAreSelected() {
+        var state = state();
+        state.classes.put("main.Repository", new ClassEntry("changed", Set.of(), ""));
+        assertThat(selectAffectedTests(List.of(testClassesDir()), state, state()))
+            .containsExactly("tests.ServiceTest");
+    }
+
+    @Test
+    void testsDependingOnRemovedClassAreSelected() {
+        var state = state();
+        state.classes.remove("main.Util");
+        assertThat(selectAffectedTests(List.of(testClassesDir()), state, state()))
+            .containsExactly("tests.UtilTest");
+    }
+
+    @Test
+    void changedTestIsSelected() {
+        var state = state();
+        state.classes.put("tests.UtilTest", new ClassEntry("changed", Set.of("main.Util"), ""));
+        assertThat(selectAffectedTests(List.of(testClassesDir()), state, state()))
+            .containsExactly("tests.UtilTest");
+    }
+
+    @Test
+    void testsDependingOnChangedClassWithSameConstantsAreSelected() {
+        var state = state();
+        state.classes.put("main.Constants", new ClassEntry("changed", Set.of(), "constants"));
+        assertThat(selectAffectedTests(List.of(testClassesDir()), state, state()))
+            .isEmpty();
+    }
+
+    @Test
+    void allTestsAreSelectedIfConstantsChanged() {
+        var state = state();
+        state.classes.put("main.Constants", new ClassEntry("changed", Set.of(), "changed constants"));
+        assertNull(selectAffectedTests(List.of(testClassesDir()), state, state()));
+    }
+
+    @Test
+    void allTestsAreSelectedIfClassWithConstantsRemoved() {
+        var state = state();
+        state.classes.remove("main.Constants");
+        assertNull(selectAffectedTests(List.of(testClassesDir()), state, state()));
+    }
+
+    private static State state() {
+        var state = new State();
+        state.classes.put("main.Util", new ClassEntry("1", Set.of(), ""));
+        state.classes.put("main.Repository", new ClassEntry("2", Set.of(), ""));
+        state.classes.put("main.Service", new ClassEntry("3", Set.of("main.Repository"), ""));
+        state.classes.put("tests.ServiceTest", new ClassEntry("4", Set.of("main.Service"), ""));
+        state.classes.put("tests.UtilTest", new ClassEntry("5", Set.of("main.Util"), ""));
+        state.classes.put("main.Constants", new ClassEntry("6", Set.of(), "constants"));
+        return state;
+    }
+
+    @SneakyThrows
+    private File testClassesDir() {
+        var dir = createDirectories(tempDir.resolve("test-classes/tests"));
+        write(dir.resolve("ServiceTest.class"), new byte[0]);
+        write(dir.resolve("UtilTest.class"), new byte[0]);
+        return dir.getParent().toFile();
+    }
+
+    @SneakyThrows
+    private static void writeClass(Path classesDir, Class<?> clazz) {
+        var classFile = classesDir.resolve(clazz.getName().replace('.', '/') + ".class");
+        createDirectories(classFile.getParent());
+        write(classFile, readClassBytes(clazz));
+    }
+
+}
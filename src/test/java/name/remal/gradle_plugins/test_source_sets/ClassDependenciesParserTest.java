@@ -0,0 +1,84 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static name.remal.gradle_plugins.test_source_sets.ClassDependenciesParser.parseClassDependencies;
+import static name.remal.gradle_plugins.test_source_sets.ClassDependenciesParser.parseConstantFields;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+class ClassDependenciesParserTest {
+
+    @Test
+    void classDependencies() {
+        assertThat(parseClassDependencies(readClassBytes(Sample.class)))
+            .contains(
+                Dependency.class.getName(),
+                FieldDependency.class.getName(),
+                List.class.getName(),
+                Map.class.getName(),
+                String.class.getName(),
+                Object.class.getName()
+            )
+            .doesNotContain(Sample.class.getName());
+    }
+
+    @Test
+    void constantFields() {
+        assertThat(parseConstantFields(readClassBytes(Constants.class)))
+            .containsOnly(
+                entry("STRING:Ljava/lang/String;", "Svalue"),
+                entry("NUMBER:I", "I42")
+            );
+    }
+
+    @Test
+    void notClassFile() {
+        assertThrows(IllegalArgumentException.class, () -> parseClassDependencies(new byte[]{1, 2, 3, 4}));
+    }
+
+    @SneakyThrows
+    static byte[] readClassBytes(Class<?> clazz) {
+        var resourceName = clazz.getName().replace('.', '/') + ".class";
+        try (var in = Objects.requireNonNull(clazz.getClassLoader().getResourceAsStream(resourceName))) {
+            return in.readAllBytes();
+        }
+    }
+
+
+    @SuppressWarnings("unused")
+    static class Sample {
+
+        FieldDependency field;
+
+        List<Map<String, Dependency>> list;
+
+        Object create() {
+            return new Dependency();
+        }
+
+    }
+
+    static class Dependency {
+    }
+
+    @SuppressWarnings("unused")
+    static class Constants {
+
+        static final String STRING = "value";
+
+        static final int NUMBER = 42;
+
+        static final Object NOT_CONSTANT = new Object();
+
+    }
+
+    static class FieldDependency {
+    }
+
+}
@@ -0,0 +1,84 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.gradle.api.tasks.SourceSet.TEST_SOURCE_SET_NAME;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import lombok.RequiredArgsConstructor;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.junit.jupiter.api.Test;
+
+@RequiredArgsConstructor
+class ConfigurationExtendsFromWiringTest {
+
+    private final Project project;
+
+
+    @Test
+    void parentIsAddedBeforeChild() {
+        var configurations = project.getConfigurations();
+        var wiring = new ConfigurationExtendsFromWiring(configurations);
+
+        var parent = configurations.create("parent");
+        wiring.extendsFrom("child", "parent");
+        var child = configurations.create("child");
+
+        assertThat(child.getExtendsFrom()).containsExactly(parent);
+    }
+
+    @Test
+    void childIsAddedBeforeParent() {
+        var configurations = project.getConfigurations();
+        var wiring = new ConfigurationExtendsFromWiring(configurations);
+
+        var child = configurations.create("child");
+        wiring.extendsFrom("child", "parent");
+        var parent = configurations.create("parent");
+
+        assertThat(child.getExtendsFrom()).containsExactly(parent);
+    }
+
+    @Test
+    void bothAreAddedBeforeWiring() {
+        var configurations = project.getConfigurations();
+        var wiring = new ConfigurationExtendsFromWiring(configurations);
+
+        var parent = configurations.create("parent");
+        var child = configurations.create("child");
+        wiring.extendsFrom("child", "parent");
+
+        assertThat(child.getExtendsFrom()).containsExactly(parent);
+    }
+
+    @Test
+    void lookupsCountOfPluginGrowsLinearlyWithNumberOfTestSourceSets() {
+        project.getPluginManager().apply(TestSourceSetsPlugin.class);
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        var wiring = project.getPlugins().getPlugin(TestSourceSetsPlugin.class).getConfigurationExtendsFromWiring();
+        assertNotNull(wiring);
+        var configurations = project.getConfigurations();
+        var testSourceSet = getExtension(project, SourceSetContainer.class).getByName(TEST_SOURCE_SET_NAME);
+
+        var initialLookups = wiring.getLookupsCount();
+        final int batchSize = 200;
+        for (int i = 0; i < batchSize; ++i) {
+            testSourceSets.create("first" + i + "Test");
+        }
+        var firstBatchLookups = wiring.getLookupsCount() - initialLookups;
+        assertThat(firstBatchLookups).isPositive();
+
+        for (int i = 0; i < batchSize; ++i) {
+            testSourceSets.create("second" + i + "Test");
+        }
+        var secondBatchLookups = wiring.getLookupsCount() - initialLookups - firstBatchLookups;
+
+        assertThat(secondBatchLookups).isLessThanOrEqualTo(firstBatchLookups);
+
+        var lastSourceSet = testSourceSets.getByName("second" + (batchSize - 1) + "Test");
+        assertThat(configurations.getByName(lastSourceSet.getImplementationConfigurationName()).getExtendsFrom())
+            .contains(configurations.getByName(testSourceSet.getImplementationConfigurationName()));
+    }
+
+}
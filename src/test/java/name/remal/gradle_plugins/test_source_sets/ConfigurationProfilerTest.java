@@ -0,0 +1,87 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static name.remal.gradle_plugins.test_source_sets.ConfigurationProfiler.ALL_PROJECTS_REPORT_FILE_PATH;
+import static name.remal.gradle_plugins.test_source_sets.ConfigurationProfiler.PROFILE_PROPERTY;
+import static name.remal.gradle_plugins.test_source_sets.ConfigurationProfiler.REPORT_FILE_PATH;
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import lombok.RequiredArgsConstructor;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.Test;
+
+@RequiredArgsConstructor
+class ConfigurationProfilerTest {
+
+    private final Project project;
+
+
+    @Test
+    void profilingIsDisabledByDefault() {
+        project.getPluginManager().apply(TestSourceSetsPlugin.class);
+
+        assertThat(project.getGradle().getSharedServices().getRegistrations())
+            .noneMatch(registration -> registration.getName().startsWith(
+                ConfigurationProfilerBuildService.class.getName()
+            ));
+    }
+
+    @Test
+    void reportContainsSectionsOfTheProject() throws Exception {
+        var profiledProject = createProjectWithGradleProperty(PROFILE_PROPERTY, "true");
+        profiledProject.getPluginManager().apply(TestSourceSetsPlugin.class);
+        getExtension(profiledProject, TestSourceSetContainer.class).create("integrationTest");
+
+        var service = (ConfigurationProfilerBuildService) profiledProject.getGradle().getSharedServices()
+            .getRegistrations()
+            .stream()
+            .filter(registration -> registration.getName().startsWith(
+                ConfigurationProfilerBuildService.class.getName()
+            ))
+            .findFirst()
+            .orElseThrow()
+            .getService()
+            .get();
+        service.close();
+
+        var buildDir = profiledProject.getLayout().getBuildDirectory();
+        var reportFile = buildDir.file(REPORT_FILE_PATH).get().getAsFile();
+        assertThat(new String(Files.readAllBytes(reportFile.toPath()), UTF_8))
+            .contains(
+                "\"path\": \":\"",
+                "\"configureConfigurations\": {\"elapsedNanos\": ",
+                "\"configureTestTasks\": {\"elapsedNanos\": ",
+                "\"sourceSets\": "
+            );
+
+        var allProjectsReportFile = buildDir.file(ALL_PROJECTS_REPORT_FILE_PATH).get().getAsFile();
+        assertThat(new String(Files.readAllBytes(allProjectsReportFile.toPath()), UTF_8))
+            .contains(
+                "\"projects\": [",
+                "\"path\": \":\"",
+                "\"configureConfigurations\": {\"elapsedNanos\": "
+            );
+    }
+
+    private Project createProjectWithGradleProperty(String name, String value) {
+        var systemPropertyName = "org.gradle.project." + name;
+        var previousValue = System.getProperty(systemPropertyName);
+        System.setProperty(systemPropertyName, value);
+        try {
+            return ProjectBuilder.builder()
+                .withProjectDir(new File(project.getProjectDir(), "profiled"))
+                .build();
+        } finally {
+            if (previousValue != null) {
+                System.setProperty(systemPropertyName, previousValue);
+            } else {
+                System.clearProperty(systemPropertyName);
+            }
+        }
+    }
+
+}
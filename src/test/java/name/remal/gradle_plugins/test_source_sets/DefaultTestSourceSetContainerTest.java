@@ -0,0 +1,75 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import groovy.lang.MissingPropertyException;
+import groovy.util.Eval;
+import lombok.RequiredArgsConstructor;
+import name.remal.gradle_plugins.toolkit.testkit.ApplyPlugin;
+import org.gradle.api.Project;
+import org.junit.jupiter.api.Test;
+
+@RequiredArgsConstructor
+class DefaultTestSourceSetContainerTest {
+
+    @ApplyPlugin(type = TestSourceSetsPlugin.class)
+    private final Project project;
+
+
+    @Test
+    void extensionIsDefaultTestSourceSetContainer() {
+        assertThat(getExtension(project, TestSourceSetContainer.class))
+            .isInstanceOf(DefaultTestSourceSetContainer.class);
+    }
+
+    @Test
+    void configureBlockCreatesTestSourceSetsAndSetsProperties() {
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        Eval.x(testSourceSets, String.join("\n",
+            "x.configure {",
+            "    testSuffixCheck = 'WARN'",
+            "    integrationTest()",
+            "    functionalTest {",
+            "        java.srcDir('src/functional')",
+            "    }",
+            "}"
+        ));
+
+        assertEquals(TestSuffixCheckMode.WARN, testSourceSets.getTestSuffixCheck().get());
+        assertNotNull(testSourceSets.findByName("integrationTest"));
+        var functionalTest = testSourceSets.findByName("functionalTest");
+        assertNotNull(functionalTest);
+        assertThat(functionalTest.getJava().getSrcDirs())
+            .contains(project.file("src/functional"));
+    }
+
+    @Test
+    void elementsAreAccessibleByName() {
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        assertSame(testSourceSets.getByName("test"), Eval.x(testSourceSets, "x.test"));
+    }
+
+    @Test
+    void missingElementIsNotCreatedOutsideOfConfigureBlock() {
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        assertThrows(MissingPropertyException.class, () -> Eval.x(testSourceSets, "x.integrationTest"));
+    }
+
+    @Test
+    void missingElementIsNotCreatedByPropertyInsideOfConfigureBlock() {
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        assertThrows(MissingPropertyException.class, () -> Eval.x(testSourceSets, String.join("\n",
+            "x.configure {",
+            "    integrationTst",
+            "}"
+        )));
+        assertNull(testSourceSets.findByName("integrationTst"));
+    }
+
+}
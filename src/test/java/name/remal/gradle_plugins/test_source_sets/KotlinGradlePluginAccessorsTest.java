@@ -0,0 +1,62 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static name.remal.gradle_plugins.test_source_sets.KotlinGradlePluginAccessors.findAssociateWith;
+import static name.remal.gradle_plugins.test_source_sets.KotlinGradlePluginAccessors.findGetCompilations;
+import static name.remal.gradle_plugins.test_source_sets.KotlinGradlePluginAccessors.findGetTarget;
+import static name.remal.gradle_plugins.test_source_sets.KotlinGradlePluginAccessors.invokeAssociateWith;
+import static name.remal.gradle_plugins.test_source_sets.KotlinGradlePluginAccessors.invokeGetter;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class KotlinGradlePluginAccessorsTest {
+
+    @Test
+    void getTarget() {
+        var extension = new Extension();
+        var getTarget = findGetTarget(Extension.class);
+        assertNotNull(getTarget);
+        assertSame(extension.target, invokeGetter(getTarget, extension));
+        assertSame(getTarget, findGetTarget(Extension.class));
+    }
+
+    @Test
+    void associateWith() {
+        var compilation = new Compilation();
+        var other = new Compilation();
+        var associateWith = findAssociateWith(Compilation.class);
+        assertNotNull(associateWith);
+        invokeAssociateWith(associateWith, compilation, other);
+        assertSame(other, compilation.associatedWith);
+    }
+
+    @Test
+    void missingMethods() {
+        assertNull(findGetCompilations(Extension.class));
+        assertNull(findAssociateWith(Extension.class));
+    }
+
+
+    public static class Extension {
+
+        private final Object target = new Object();
+
+        public Object getTarget() {
+            return target;
+        }
+
+    }
+
+    public static class Compilation {
+
+        private Object associatedWith;
+
+        public void associateWith(Compilation other) {
+            associatedWith = other;
+        }
+
+    }
+
+}
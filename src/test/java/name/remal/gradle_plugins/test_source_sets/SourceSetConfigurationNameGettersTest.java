@@ -0,0 +1,38 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static name.remal.gradle_plugins.test_source_sets.SourceSetConfigurationNameGetters.getConfigurationNames;
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.gradle.api.tasks.SourceSet.TEST_SOURCE_SET_NAME;
+
+import lombok.RequiredArgsConstructor;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@RequiredArgsConstructor
+class SourceSetConfigurationNameGettersTest {
+
+    private final Project project;
+
+    @BeforeEach
+    void beforeEach() {
+        project.getPluginManager().apply("java");
+    }
+
+
+    @Test
+    void returnsConfigurationNamesOfSourceSet() {
+        var testSourceSet = getExtension(project, SourceSetContainer.class).getByName(TEST_SOURCE_SET_NAME);
+        assertThat(getConfigurationNames(testSourceSet))
+            .contains(
+                testSourceSet.getCompileClasspathConfigurationName(),
+                testSourceSet.getRuntimeClasspathConfigurationName(),
+                testSourceSet.getImplementationConfigurationName(),
+                testSourceSet.getCompileOnlyConfigurationName(),
+                testSourceSet.getRuntimeOnlyConfigurationName()
+            );
+    }
+
+}
@@ -0,0 +1,167 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.delete;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.writeString;
+import static name.remal.gradle_plugins.test_source_sets.TestClassResultsCache.readKeys;
+import static name.remal.gradle_plugins.test_source_sets.TestClassResultsCache.storeTestClassResults;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import name.remal.gradle_plugins.test_source_sets.TestClassResultsCache.ExcludeCachedTestClasses;
+import org.gradle.api.Project;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@RequiredArgsConstructor
+class TestClassResultsCacheTest {
+
+    private final Project project;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @SneakyThrows
+    void passedTestClassesAreCachedAndReplayed() {
+        var keysFile = tempDir.resolve("keys.txt").toFile();
+        var testTaskKeysFile = tempDir.resolve("test-task-keys.txt").toFile();
+        TestClassResultsCache.writeKeys(keysFile, Map.of("pkg.ATest", "a", "pkg.BTest", "b"));
+        var cacheDir = tempDir.resolve("cache").toFile();
+
+        var task = project.getTasks().create("cachedTest", org.gradle.api.tasks.testing.Test.class);
+        var reportsDir = createDirectories(
+            task.getReports().getJunitXml().getOutputLocation().get().getAsFile().toPath()
+        );
+        writeReport(reportsDir, "pkg.ATest", 0);
+        writeReport(reportsDir, "pkg.ATest$Nested", 0);
+        writeReport(reportsDir, "pkg.BTest", 1);
+
+        storeTestClassResults(readKeys(keysFile, task), cacheDir, null, reportsDir.toFile());
+        assertTrue(new File(cacheDir, "pkg.ATest/TEST-pkg.ATest.xml").isFile());
+        assertTrue(new File(cacheDir, "pkg.ATest/TEST-pkg.ATest$Nested.xml").isFile());
+        assertFalse(new File(cacheDir, "pkg.BTest").exists());
+
+        new ExcludeCachedTestClasses(keysFile, cacheDir, testTaskKeysFile).execute(task);
+        assertThat(task.getFilter().getExcludePatterns())
+            .containsExactlyInAnyOrder("pkg.ATest", "pkg.ATest$*");
+        assertThat(readKeys(testTaskKeysFile)).isEqualTo(readKeys(keysFile, task));
+
+        delete(reportsDir.resolve("TEST-pkg.ATest.xml"));
+        delete(reportsDir.resolve("TEST-pkg.ATest$Nested.xml"));
+        storeTestClassResults(readKeys(keysFile, task), cacheDir, null, reportsDir.toFile());
+        assertTrue(exists(reportsDir.resolve("TEST-pkg.ATest.xml")));
+        assertTrue(exists(reportsDir.resolve("TEST-pkg.ATest$Nested.xml")));
+    }
+
+    @Test
+    @SneakyThrows
+    void testClassesWithChangedKeysAreNotExcluded() {
+        var keysFile = tempDir.resolve("keys.txt").toFile();
+        var testTaskKeysFile = tempDir.resolve("test-task-keys.txt").toFile();
+        var cacheDir = tempDir.resolve("cache").toFile();
+        var classCacheDir = createDirectories(cacheDir.toPath().resolve("pkg.ATest"));
+        writeString(classCacheDir.resolve("key.txt"), "old");
+        TestClassResultsCache.writeKeys(keysFile, Map.of("pkg.ATest", "new"));
+
+        var task = project.getTasks().create("cachedTest", org.gradle.api.tasks.testing.Test.class);
+        new ExcludeCachedTestClasses(keysFile, cacheDir, testTaskKeysFile).execute(task);
+        assertThat(task.getFilter().getExcludePatterns()).isEmpty();
+    }
+
+    @Test
+    @SneakyThrows
+    void testClassesAreNotExcludedByTestTasksWithDifferentSettings() {
+        var keysFile = tempDir.resolve("keys.txt").toFile();
+        var testTaskKeysFile = tempDir.resolve("test-task-keys.txt").toFile();
+        TestClassResultsCache.writeKeys(keysFile, Map.of("pkg.ATest", "a"));
+        var cacheDir = tempDir.resolve("cache").toFile();
+
+        var task = project.getTasks().create("cachedTest", org.gradle.api.tasks.testing.Test.class);
+        var reportsDir = createDirectories(
+            task.getReports().getJunitXml().getOutputLocation().get().getAsFile().toPath()
+        );
+        writeReport(reportsDir, "pkg.ATest", 0);
+        storeTestClassResults(readKeys(keysFile, task), cacheDir, null, reportsDir.toFile());
+
+        var otherTask = project.getTasks().create("otherCachedTest", org.gradle.api.tasks.testing.Test.class);
+        otherTask.systemProperty("prop", "value");
+        new ExcludeCachedTestClasses(keysFile, cacheDir, testTaskKeysFile).execute(otherTask);
+        assertThat(otherTask.getFilter().getExcludePatterns()).isEmpty();
+
+        var envTask = project.getTasks().create("envCachedTest", org.gradle.api.tasks.testing.Test.class);
+        envTask.environment("ENV_VAR", "value");
+        new ExcludeCachedTestClasses(keysFile, cacheDir, testTaskKeysFile).execute(envTask);
+        assertThat(envTask.getFilter().getExcludePatterns()).isEmpty();
+
+        var sameTask = project.getTasks().create("sameCachedTest", org.gradle.api.tasks.testing.Test.class);
+        new ExcludeCachedTestClasses(keysFile, cacheDir, testTaskKeysFile).execute(sameTask);
+        assertThat(sameTask.getFilter().getExcludePatterns())
+            .containsExactlyInAnyOrder("pkg.ATest", "pkg.ATest$*");
+    }
+
+    @Test
+    @SneakyThrows
+    void onlyResultsOfTestClassesOfShardAreReplayed() {
+        var keysFile = tempDir.resolve("keys.txt").toFile();
+        TestClassResultsCache.writeKeys(keysFile, Map.of("pkg.ATest", "a", "pkg.BTest", "b"));
+        var cacheDir = tempDir.resolve("cache").toFile();
+        var shardFile = tempDir.resolve("shard1.txt");
+        writeString(shardFile, "pkg.BTest\n");
+
+        var task = project.getTasks().create("cachedTestShard1", org.gradle.api.tasks.testing.Test.class);
+        var reportsDir = createDirectories(
+            task.getReports().getJunitXml().getOutputLocation().get().getAsFile().toPath()
+        );
+        writeReport(reportsDir, "pkg.ATest", 0);
+        writeReport(reportsDir, "pkg.BTest", 0);
+        new StoreTestClassResults(keysFile, cacheDir, shardFile.toFile()).execute(task);
+
+        delete(reportsDir.resolve("TEST-pkg.ATest.xml"));
+        delete(reportsDir.resolve("TEST-pkg.BTest.xml"));
+        new StoreTestClassResults(keysFile, cacheDir, shardFile.toFile()).execute(task);
+        assertFalse(exists(reportsDir.resolve("TEST-pkg.ATest.xml")));
+        assertTrue(exists(reportsDir.resolve("TEST-pkg.BTest.xml")));
+    }
+
+    @Test
+    @SneakyThrows
+    void storeTaskStoresResultsOnlyIfTestTaskWasExecuted() {
+        var keysFile = tempDir.resolve("keys.txt").toFile();
+        TestClassResultsCache.writeKeys(keysFile, Map.of("pkg.ATest", "a"));
+        var testTaskKeysFile = tempDir.resolve("test-task-keys.txt").toFile();
+        var cacheDir = tempDir.resolve("cache").toFile();
+        var reportsDir = createDirectories(tempDir.resolve("reports"));
+        writeReport(reportsDir, "pkg.ATest", 0);
+
+        var storeTask = project.getTasks().create("cachedTestClassResultsStore", TestClassResultsStore.class);
+        storeTask.getTestTaskKeysFile().set(testTaskKeysFile);
+        storeTask.getCacheDir().set(cacheDir);
+        storeTask.getJunitXmlReportsDir().set(reportsDir.toFile());
+
+        storeTask.execute();
+        assertFalse(cacheDir.exists());
+
+        var task = project.getTasks().create("cachedTest", org.gradle.api.tasks.testing.Test.class);
+        new ExcludeCachedTestClasses(keysFile, cacheDir, testTaskKeysFile).execute(task);
+        storeTask.execute();
+        assertTrue(new File(cacheDir, "pkg.ATest/TEST-pkg.ATest.xml").isFile());
+        assertFalse(testTaskKeysFile.exists());
+    }
+
+    @SneakyThrows
+    private static void writeReport(Path reportsDir, String className, int failures) {
+        writeString(
+            reportsDir.resolve("TEST-" + className + ".xml"),
+            "<testsuite name=\"" + className + "\" tests=\"1\" failures=\"" + failures + "\" errors=\"0\"/>"
+        );
+    }
+
+}
@@ -0,0 +1,130 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.writeString;
+import static name.remal.gradle_plugins.test_source_sets.TestShardsPlanner.findTopLevelClassNames;
+import static name.remal.gradle_plugins.test_source_sets.TestShardsPlanner.planShards;
+import static name.remal.gradle_plugins.test_source_sets.TestShardsPlanner.planShardsByHash;
+import static name.remal.gradle_plugins.test_source_sets.TestShardsPlanner.readDurations;
+import static name.remal.gradle_plugins.test_source_sets.TestShardsPlanner.readDurationsFile;
+import static name.remal.gradle_plugins.test_source_sets.TestShardsPlanner.writeDurationsFile;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TestShardsPlannerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void longestClassesAreAssignedFirst() {
+        var shards = planShards(
+            List.of("pkg.A", "pkg.B", "pkg.C", "pkg.D"),
+            Map.of("pkg.A", 10.0, "pkg.B", 6.0, "pkg.C", 5.0, "pkg.D", 1.0),
+            2
+        );
+
+        assertThat(shards).containsExactly(
+            List.of("pkg.A", "pkg.D"),
+            List.of("pkg.B", "pkg.C")
+        );
+    }
+
+    @Test
+    void classesWithoutDurationTakeAverageDuration() {
+        var shards = planShards(
+            List.of("pkg.A", "pkg.B", "pkg.C"),
+            Map.of("pkg.A", 4.0, "pkg.B", 2.0),
+            2
+        );
+
+        assertThat(shards).containsExactly(
+            List.of("pkg.A"),
+            List.of("pkg.C", "pkg.B")
+        );
+    }
+
+    @Test
+    void emptyShards() {
+        var shards = planShards(List.of("pkg.A"), Map.of(), 3);
+
+        assertThat(shards).containsExactly(
+            List.of("pkg.A"),
+            List.of(),
+            List.of()
+        );
+    }
+
+    @Test
+    void classesWithoutDurationsAreAssignedByHash() {
+        var classNames = List.of("pkg.A", "pkg.B", "pkg.C", "pkg.D", "pkg.E");
+        var shards = planShardsByHash(classNames, 2);
+        assertThat(shards).hasSize(2);
+        assertThat(shards.get(0)).doesNotContainAnyElementsOf(shards.get(1));
+        assertThat(shards.stream().mapToInt(List::size).sum()).isEqualTo(classNames.size());
+
+        var shardsWithoutOneClass = planShardsByHash(classNames.subList(1, classNames.size()), 2);
+        for (int i = 0; i < shards.size(); ++i) {
+            var expectedShard = new ArrayList<>(shards.get(i));
+            expectedShard.remove("pkg.A");
+            assertThat(shardsWithoutOneClass.get(i)).isEqualTo(expectedShard);
+        }
+    }
+
+    @Test
+    void durationsFile() {
+        var file = tempDir.resolve("durations.properties").toFile();
+        writeDurationsFile(file, Map.of("pkg.BTest", 2.5, "pkg.ATest", 1.0));
+
+        assertThat(readDurationsFile(file))
+            .containsExactly(Map.entry("pkg.ATest", 1.0), Map.entry("pkg.BTest", 2.5));
+    }
+
+    @Test
+    @SneakyThrows
+    void topLevelClassNames() {
+        var classesDir = tempDir.resolve("classes");
+        createDirectories(classesDir.resolve("pkg"));
+        writeString(classesDir.resolve("pkg/ATest.class"), "", UTF_8);
+        writeString(classesDir.resolve("pkg/ATest$Nested.class"), "", UTF_8);
+        writeString(classesDir.resolve("pkg/package-info.class"), "", UTF_8);
+        writeString(classesDir.resolve("module-info.class"), "", UTF_8);
+        writeString(classesDir.resolve("BTest.class"), "", UTF_8);
+
+        assertThat(findTopLevelClassNames(List.of(classesDir.toFile(), tempDir.resolve("missing").toFile())))
+            .containsExactly("BTest", "pkg.ATest");
+    }
+
+    @Test
+    @SneakyThrows
+    void durationsAreReadFromJunitXmlReports() {
+        var resultsDir1 = createDirectories(tempDir.resolve("results1"));
+        writeString(
+            resultsDir1.resolve("TEST-pkg.ATest.xml"),
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<testsuite name=\"pkg.ATest\" tests=\"1\" time=\"1.5\"><testcase name=\"a\"/></testsuite>",
+            UTF_8
+        );
+        writeString(resultsDir1.resolve("TEST-broken.xml"), "<testsuite", UTF_8);
+        writeString(resultsDir1.resolve("other.xml"), "<testsuite name=\"pkg.Other\" time=\"1\"/>", UTF_8);
+
+        var resultsDir2 = createDirectories(tempDir.resolve("results2"));
+        writeString(
+            resultsDir2.resolve("TEST-pkg.ATest.xml"),
+            "<testsuite name=\"pkg.ATest\" time=\"2.5\"/>",
+            UTF_8
+        );
+
+        assertThat(readDurations(List.of(resultsDir1.toFile(), resultsDir2.toFile())))
+            .containsExactly(Map.entry("pkg.ATest", 2.5));
+    }
+
+}
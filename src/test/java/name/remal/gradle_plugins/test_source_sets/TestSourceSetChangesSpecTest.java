@@ -0,0 +1,158 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
+import static org.gradle.api.tasks.SourceSet.MAIN_SOURCE_SET_NAME;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import name.remal.gradle_plugins.test_source_sets.TestSourceSetChangesSpec.SourceSetFiles;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TestSourceSetChangesSpecTest {
+
+    private final Project project;
+
+    private final Project subProject;
+
+    private final Project otherProject;
+
+    TestSourceSetChangesSpecTest(Project project) {
+        this.project = project;
+        this.subProject = ProjectBuilder.builder().withParent(project).withName("sub").build();
+        this.otherProject = ProjectBuilder.builder().withParent(project).withName("other").build();
+    }
+
+    @BeforeEach
+    void beforeEach() {
+        otherProject.getPluginManager().apply("java-library");
+        subProject.getPluginManager().apply("java");
+        getExtension(subProject, SourceSetContainer.class).create("functional");
+        getExtension(subProject, SourceSetContainer.class).create("shared");
+    }
+
+
+    @Test
+    void sourceDirChangeIsRelevant() {
+        assertTrue(isSatisfiedBy("sub/src/integration/java/pkg/ATest.java"));
+        assertTrue(isSatisfiedBy("sub/src/main/java/pkg/A.java"));
+    }
+
+    @Test
+    void buildFilesChangesAreRelevant() {
+        assertTrue(isSatisfiedBy("sub/build.gradle"));
+        assertTrue(isSatisfiedBy("settings.gradle"));
+        assertTrue(isSatisfiedBy("gradle/libs.versions.toml"));
+    }
+
+    @Test
+    void filesOfRootProjectOutsideOfItsSourcesAreBuildWide() {
+        assertTrue(isSatisfiedBy("build.gradle"));
+        assertTrue(isSatisfiedBy("build.gradle.kts"));
+        assertTrue(isSatisfiedBy("build-logic/src/main/groovy/conventions.gradle"));
+        assertTrue(isSatisfiedBy(".github/workflows/build.yml"));
+    }
+
+    @Test
+    void filesOfIncludedBuildsAreBuildWide() {
+        assertTrue(isSatisfiedBy("conventions/src/main/java/pkg/Conventions.java"));
+    }
+
+    @Test
+    void sourcesOfNotUpstreamRootProjectAreNotRelevant() {
+        assertFalse(isSatisfiedBy("src/main/java/pkg/Root.java"));
+    }
+
+    @Test
+    void sourcesOfSourceSetsNotOnRuntimeClasspathAreNotRelevant() {
+        assertFalse(isSatisfiedBy("sub/src/functional/java/pkg/ATest.java"));
+    }
+
+    @Test
+    void sourcesOfSourceSetsOnRuntimeClasspathAreRelevant() {
+        assertTrue(isSatisfiedBy("sub/src/shared/java/pkg/Shared.java"));
+    }
+
+    @Test
+    void otherFilesOfTheSameProjectAreRelevant() {
+        assertTrue(isSatisfiedBy("sub/lombok.config"));
+        assertTrue(isSatisfiedBy("sub/README.md"));
+    }
+
+    @Test
+    void allFilesOfTheSameProjectAreRelevantIfItDependsOnItself() {
+        subProject.getPluginManager().apply("java-test-fixtures");
+        var dependencies = subProject.getDependencies();
+        dependencies.add("runtimeOnly", dependencies.testFixtures(subProject));
+        assertTrue(isSatisfiedBy("sub/src/testFixtures/java/pkg/Fixture.java"));
+        assertTrue(isSatisfiedBy("sub/src/functional/java/pkg/ATest.java"));
+    }
+
+    @Test
+    void filesOfNotUpstreamProjectsAreNotRelevant() {
+        assertFalse(isSatisfiedBy("other/src/main/java/pkg/B.java"));
+    }
+
+    @Test
+    void filesOfUpstreamProjectsAreRelevant() {
+        subProject.getDependencies().add("implementation", otherProject);
+        assertTrue(isSatisfiedBy("other/src/main/java/pkg/B.java"));
+    }
+
+    @Test
+    void filesOfOtherProjectsAreRelevantIfUpstreamProjectsAreUnknown() {
+        var spec = createSpec(List.of("other/src/main/java/pkg/B.java"), false);
+        assertTrue(spec.isSatisfiedBy(subProject.getTasks().maybeCreate("changesSpecTest")));
+    }
+
+    private boolean isSatisfiedBy(String... changedPaths) {
+        var spec = createSpec(List.of(changedPaths), true);
+        return spec.isSatisfiedBy(subProject.getTasks().maybeCreate("changesSpecTest"));
+    }
+
+    private TestSourceSetChangesSpec createSpec(List<String> changedPaths, boolean withRuntimeClasspath) {
+        var rootDir = project.getProjectDir();
+        var projectDir = subProject.getProjectDir();
+        return new TestSourceSetChangesSpec(
+            project.provider(() -> changedPaths.stream()
+                .map(path -> new File(rootDir, path))
+                .collect(Collectors.toList())
+            ),
+            rootDir,
+            List.of(new File(rootDir, "build.gradle"), new File(rootDir, "conventions")),
+            subProject.getPath(),
+            List.of(new File(projectDir, "build.gradle")),
+            List.of(new File(projectDir, "src/integration/java"), new File(projectDir, "src/main/java")),
+            getExtension(subProject, SourceSetContainer.class).stream()
+                .filter(sourceSet -> !sourceSet.getName().equals(MAIN_SOURCE_SET_NAME))
+                .map(sourceSet -> new SourceSetFiles(
+                    List.copyOf(sourceSet.getAllSource().getSrcDirs()),
+                    sourceSet.getOutput()
+                ))
+                .collect(Collectors.toList()),
+            subProject.files(
+                getExtension(subProject, SourceSetContainer.class).getByName("shared").getOutput(),
+                subProject.getConfigurations().getByName("runtimeClasspath")
+            ),
+            Map.of(
+                project.getPath(), rootDir,
+                subProject.getPath(), projectDir,
+                otherProject.getPath(), otherProject.getProjectDir()
+            ),
+            withRuntimeClasspath
+                ? subProject.getConfigurations().getByName("runtimeClasspath")
+                .getIncoming()
+                .getResolutionResult()
+                .getRootComponent()
+                : null
+        );
+    }
+
+}
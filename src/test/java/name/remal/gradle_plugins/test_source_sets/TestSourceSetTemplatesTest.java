@@ -0,0 +1,37 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import lombok.RequiredArgsConstructor;
+import org.gradle.api.Project;
+import org.junit.jupiter.api.Test;
+
+@RequiredArgsConstructor
+class TestSourceSetTemplatesTest {
+
+    private final Project project;
+
+
+    @Test
+    void templatesAreCompiledOnce() {
+        var templates = project.getObjects().newInstance(TestSourceSetTemplates.class);
+        templates.template("integrationTest", template -> template.testTask(task -> task.setMaxParallelForks(2)));
+        templates.template("perfTest");
+
+        var compiledTemplates = templates.compile();
+        assertThat(compiledTemplates).containsOnlyKeys("integrationTest", "perfTest");
+        assertThat(compiledTemplates.get("integrationTest").getTestTaskActions()).hasSize(1);
+        assertSame(compiledTemplates, templates.compile());
+    }
+
+    @Test
+    void templatesCanNotBeAddedAfterCompilation() {
+        var templates = project.getObjects().newInstance(TestSourceSetTemplates.class);
+        templates.compile();
+
+        assertThrows(IllegalStateException.class, () -> templates.template("integrationTest"));
+    }
+
+}
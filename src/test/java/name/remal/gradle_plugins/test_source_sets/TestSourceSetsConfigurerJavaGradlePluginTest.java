@@ -6,6 +6,8 @@ import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 
 import lombok.RequiredArgsConstructor;
 import org.gradle.api.Project;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
 import org.gradle.plugin.devel.GradlePluginDevelopmentExtension;
 import org.junit.jupiter.api.Test;
 
@@ -56,4 +58,20 @@ class TestSourceSetsConfigurerJavaGradlePluginTest {
             );
     }
 
+    @Test
+    void allTestSourceSetsAreAddedKeepingConfiguredOnes() {
+        project.getPluginManager().apply("java-gradle-plugin");
+        var gradlePluginDev = getExtension(project, GradlePluginDevelopmentExtension.class);
+        gradlePluginDev.testSourceSets(getExtension(project, SourceSetContainer.class).create("custom"));
+
+        project.getPluginManager().apply(TestSourceSetsPlugin.class);
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+        testSourceSets.create("integrationTest");
+        testSourceSets.register("functionalTest");
+
+        assertThat(gradlePluginDev.getTestSourceSets())
+            .extracting(SourceSet::getName)
+            .containsExactlyInAnyOrder("custom", "test", "integrationTest", "functionalTest");
+    }
+
 }
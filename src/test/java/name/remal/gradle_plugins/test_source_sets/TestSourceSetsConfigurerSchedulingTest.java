@@ -0,0 +1,34 @@
+package name.remal.gradle_plugins.test_source_sets;
+
+import static name.remal.gradle_plugins.test_source_sets.TestSourceSetsConfigurerScheduling.orderTaskNames;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class TestSourceSetsConfigurerSchedulingTest {
+
+    private static final List<String> TASK_NAMES = List.of("a", "b", "c", "d");
+
+    private static final Map<String, Long> DURATIONS = Map.of("a", 10L, "b", 30L, "d", 50L);
+
+    @Test
+    void defaultOrder() {
+        assertThat(orderTaskNames(TASK_NAMES, DURATIONS::get, TestTasksOrder.DEFAULT))
+            .containsExactly("a", "b", "c", "d");
+    }
+
+    @Test
+    void longestFirst() {
+        assertThat(orderTaskNames(TASK_NAMES, DURATIONS::get, TestTasksOrder.LONGEST_FIRST))
+            .containsExactly("d", "b", "c", "a");
+    }
+
+    @Test
+    void shortestFirst() {
+        assertThat(orderTaskNames(TASK_NAMES, DURATIONS::get, TestTasksOrder.SHORTEST_FIRST))
+            .containsExactly("a", "b", "c", "d");
+    }
+
+}
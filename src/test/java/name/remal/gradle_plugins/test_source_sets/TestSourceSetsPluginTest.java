@@ -1,5 +1,8 @@
 package name.remal.gradle_plugins.test_source_sets;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.writeString;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.StreamSupport.stream;
 import static name.remal.gradle_plugins.toolkit.ExtensionContainerUtils.getExtension;
@@ -15,15 +18,20 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.gradle.api.tasks.SourceSet.MAIN_SOURCE_SET_NAME;
 import static org.gradle.api.tasks.SourceSet.TEST_SOURCE_SET_NAME;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.File;
 import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
 import name.remal.gradle_plugins.toolkit.SourceSetUtils;
 import name.remal.gradle_plugins.toolkit.reflection.TypedMethod0;
 import name.remal.gradle_plugins.toolkit.testkit.ApplyPlugin;
@@ -32,14 +40,21 @@ import name.remal.gradle_plugins.toolkit.testkit.TaskValidations;
 import org.gradle.api.NamedDomainObjectContainer;
 import org.gradle.api.Project;
 import org.gradle.api.Task;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.plugins.JavaPluginExtension;
+import org.gradle.api.provider.Property;
 import org.gradle.api.reflect.TypeOf;
 import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.api.tasks.TaskCollection;
 import org.gradle.api.tasks.TaskProvider;
 import org.gradle.plugin.devel.GradlePluginDevelopmentExtension;
 import org.gradle.plugins.ide.eclipse.model.EclipseModel;
 import org.gradle.plugins.ide.idea.model.IdeaModel;
+import org.gradle.process.CommandLineArgumentProvider;
+import org.gradle.testing.jacoco.plugins.JacocoTaskExtension;
+import org.gradle.testing.jacoco.tasks.JacocoCoverageVerification;
+import org.gradle.testing.jacoco.tasks.JacocoReport;
 import org.jetbrains.kotlin.gradle.dsl.KotlinSingleTargetExtension;
 import org.jetbrains.kotlin.gradle.plugin.KotlinCompilation;
 import org.jspecify.annotations.Nullable;
@@ -126,6 +141,31 @@ class TestSourceSetsPluginTest {
         assertTrue(testSourceSets.contains(anotherTestSourceSet));
     }
 
+    @Test
+    void registeredTestSourceSetIsNotCreatedUntilRequested() {
+        var sourceSets = getExtension(project, SourceSetContainer.class);
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+
+        var perfTestSourceSet = testSourceSets.register("perfTest");
+        assertNull(sourceSets.findByName("perfTest"));
+
+        assertSame(perfTestSourceSet.get(), sourceSets.findByName("perfTest"));
+        assertNotNull(project.getTasks().findByName("perfTest"));
+    }
+
+    @Test
+    void registeredTestSourceSetIsCreatedAfterProjectEvaluation() {
+        var sourceSets = getExtension(project, SourceSetContainer.class);
+        var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+
+        testSourceSets.register("perfTest");
+        assertNull(sourceSets.findByName("perfTest"));
+
+        executeAfterEvaluateActions(project);
+        assertNotNull(sourceSets.findByName("perfTest"));
+        assertNotNull(project.getTasks().findByName("perfTest"));
+    }
+
     @Test
     void removalFromSourceSetsRemovesFromTestSourceSets() {
         var sourceSets = getExtension(project, SourceSetContainer.class);
@@ -334,6 +374,266 @@ class TestSourceSetsPluginTest {
     }
 
 
+    @Nested
+    class Shards {
+
+        @Test
+        void shardTasksAreNotCreatedByDefault() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.create("integrationTest");
+            executeAfterEvaluateActions(project);
+
+            assertNull(project.getTasks().findByName("integrationTestShard1"));
+            assertNull(project.getTasks().findByName("integrationTestShardsPlan"));
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        void shardTasksReplaceTestTaskInAllTests() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            var integrationSourceSet = testSourceSets.create("integrationTest");
+            var shards = (Property<Integer>) getExtensions(integrationSourceSet).getByName("testShards");
+            shards.set(3);
+            executeAfterEvaluateActions(project);
+
+            var testTasks = project.getTasks().withType(org.gradle.api.tasks.testing.Test.class);
+            var shardTaskNames = List.of("integrationTestShard1", "integrationTestShard2", "integrationTestShard3");
+            for (var shardTaskName : shardTaskNames) {
+                var shardTask = testTasks.getByName(shardTaskName);
+                assertThat(shardTask.getTestClassesDirs().getFiles())
+                    .containsExactlyElementsOf(integrationSourceSet.getOutput().getClassesDirs().getFiles());
+                assertThat(shardTask.getTaskDependencies().getDependencies(shardTask))
+                    .extracting(Task::getName)
+                    .contains("integrationTestShardsPlan");
+            }
+            assertNull(testTasks.findByName("integrationTestShard4"));
+
+            var allTestsTask = project.getTasks().getByName("allTests");
+            assertThat(allTestsTask.getDependsOn())
+                .contains("test", "integrationTestShard1", "integrationTestShard2", "integrationTestShard3")
+                .doesNotContain("integrationTest");
+
+            var planTask = project.getTasks().getByName("integrationTestShardsPlan");
+            TaskValidations.markTaskDependenciesAsSkipped(planTask);
+            TaskValidations.assertNoTaskPropertiesProblems(planTask);
+
+            var durationsTask = project.getTasks().getByName("integrationTestShardsDurations");
+            TaskValidations.assertNoTaskPropertiesProblems(durationsTask);
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        void shardTasksAreConfiguredViaTestTasksExtension() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            var integrationSourceSet = testSourceSets.create("integrationTest");
+            var shards = (Property<Integer>) getExtensions(integrationSourceSet).getByName("testShards");
+            shards.set(2);
+            project.getTasks().named("integrationTest", org.gradle.api.tasks.testing.Test.class).configure(task ->
+                task.setMaxHeapSize("2g")
+            );
+            var testTasks = (TaskCollection<org.gradle.api.tasks.testing.Test>) getExtensions(integrationSourceSet)
+                .getByName("testTasks");
+            testTasks.configureEach(task -> task.setMinHeapSize("1g"));
+            executeAfterEvaluateActions(project);
+
+            var shardTask = project.getTasks().withType(org.gradle.api.tasks.testing.Test.class)
+                .getByName("integrationTestShard1");
+            assertEquals("1g", shardTask.getMinHeapSize());
+            assertNull(shardTask.getMaxHeapSize());
+            assertThat(shardTask.getJvmArgumentProviders()).isEmpty();
+        }
+
+    }
+
+
+    @Nested
+    class AffectedTests {
+
+        @Test
+        void affectedTestsAnalysisIsDisabledByDefault() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.create("integrationTest");
+            executeAfterEvaluateActions(project);
+
+            assertNull(project.getTasks().findByName("integrationTestAffectedTests"));
+        }
+
+        @Test
+        void testTasksDependOnAffectedTestsAnalysis() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.getAffectedTestsOnly().set(true);
+            testSourceSets.create("integrationTest");
+            executeAfterEvaluateActions(project);
+
+            for (var testSourceSetName : List.of("test", "integrationTest")) {
+                var testTask = project.getTasks().getByName(testSourceSetName);
+                assertThat(testTask.getTaskDependencies().getDependencies(testTask))
+                    .extracting(Task::getName)
+                    .contains(testSourceSetName + "AffectedTests");
+
+                var analysisTask = project.getTasks().getByName(testSourceSetName + "AffectedTests");
+                TaskValidations.markTaskDependenciesAsSkipped(analysisTask);
+                TaskValidations.assertNoTaskPropertiesProblems(analysisTask);
+            }
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        void shardTasksHaveOwnSelection() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.getAffectedTestsOnly().set(true);
+            var integrationSourceSet = testSourceSets.create("integrationTest");
+            var shards = (Property<Integer>) getExtensions(integrationSourceSet).getByName("testShards");
+            shards.set(2);
+            executeAfterEvaluateActions(project);
+
+            var analysisTask = (AffectedTestsAnalysis) project.getTasks().getByName("integrationTestAffectedTests");
+            assertThat(analysisTask.getTestTaskNames().get())
+                .containsExactlyInAnyOrder("integrationTestShard1", "integrationTestShard2");
+
+            for (var shardTaskName : List.of("integrationTestShard1", "integrationTestShard2")) {
+                var shardTask = project.getTasks().getByName(shardTaskName);
+                assertThat(shardTask.getTaskDependencies().getDependencies(shardTask))
+                    .extracting(Task::getName)
+                    .contains("integrationTestAffectedTests");
+            }
+        }
+
+        @Test
+        @SneakyThrows
+        void testTaskWithoutAffectedTestsIsExecutedIfItsSettingsChanged() {
+            var task = project.getTasks().create("affectedTest", org.gradle.api.tasks.testing.Test.class);
+            var selectionFile = project.file("selection.txt");
+            writeString(selectionFile.toPath(), "", UTF_8);
+            var baselineKeyFile = project.file("baseline.key");
+            writeString(baselineKeyFile.toPath(), TestClassResultsCache.computeTestTaskKey(task), UTF_8);
+
+            var isNotEmpty = new AffectedTestsFilter.IsNotEmpty(selectionFile, baselineKeyFile);
+            assertFalse(isNotEmpty.isSatisfiedBy(task));
+
+            task.jvmArgs("-Dchanged=true");
+            assertTrue(isNotEmpty.isSatisfiedBy(task));
+        }
+
+    }
+
+
+    @Nested
+    class TestClassResults {
+
+        @Test
+        void testTasksAreFinalizedByResultsStoreTasks() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.getTestClassResultsCache().set(true);
+            testSourceSets.create("integrationTest");
+            executeAfterEvaluateActions(project);
+
+            for (var testTaskName : List.of("test", "integrationTest")) {
+                var testTask = project.getTasks().getByName(testTaskName);
+                assertThat(testTask.getFinalizedBy().getDependencies(testTask))
+                    .extracting(Task::getName)
+                    .contains(testTaskName + "ClassResultsStore");
+            }
+        }
+
+    }
+
+
+    @Nested
+    class ClassDataSharing {
+
+        @Test
+        void classDataSharingIsDisabledByDefault() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.create("integrationTest");
+            executeAfterEvaluateActions(project);
+
+            assertNull(project.getTasks().findByName("integrationTestClassDataSharingArchive"));
+        }
+
+        @Test
+        void testTasksDependOnClassDataSharingArchive() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.getClassDataSharing().set(true);
+            testSourceSets.create("integrationTest");
+            executeAfterEvaluateActions(project);
+
+            for (var testSourceSetName : List.of("test", "integrationTest")) {
+                var testTask = project.getTasks().getByName(testSourceSetName);
+                assertThat(testTask.getTaskDependencies().getDependencies(testTask))
+                    .extracting(Task::getName)
+                    .contains(testSourceSetName + "ClassDataSharingArchive");
+
+                var archiveTask = project.getTasks().getByName(testSourceSetName + "ClassDataSharingArchive");
+                TaskValidations.markTaskDependenciesAsSkipped(archiveTask);
+                TaskValidations.assertNoTaskPropertiesProblems(archiveTask);
+            }
+        }
+
+    }
+
+
+    @Nested
+    class Scheduling {
+
+        @Test
+        void testTasksAreNotOrderedByDefault() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.create("integrationTest");
+            executeAfterEvaluateActions(project);
+
+            var testTask = project.getTasks().getByName("test");
+            assertThat(testTask.getShouldRunAfter().getDependencies(testTask)).isEmpty();
+        }
+
+        @Test
+        @SneakyThrows
+        void longestTestTasksRunFirst() {
+            var storeFile = TestSourceSetsConfigurerScheduling.getTestTaskDurationsStoreFile(project);
+            createDirectories(storeFile.getParentFile().toPath());
+            writeString(storeFile.toPath(), ":test=100\n:integrationTest=1000\n", UTF_8);
+
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.getTestTasksOrder().set(TestTasksOrder.LONGEST_FIRST);
+            testSourceSets.create("integrationTest");
+            executeAfterEvaluateActions(project);
+
+            var testTask = project.getTasks().getByName("test");
+            assertThat(testTask.getShouldRunAfter().getDependencies(testTask))
+                .extracting(Task::getName)
+                .containsExactly("integrationTest");
+
+            var integrationTestTask = project.getTasks().getByName("integrationTest");
+            assertThat(integrationTestTask.getShouldRunAfter().getDependencies(integrationTestTask)).isEmpty();
+        }
+
+        @Test
+        @SneakyThrows
+        void testTasksRunAfterOnlyPrecedingTestTask() {
+            var storeFile = TestSourceSetsConfigurerScheduling.getTestTaskDurationsStoreFile(project);
+            createDirectories(storeFile.getParentFile().toPath());
+            writeString(storeFile.toPath(), ":test=100\n:integrationTest=1000\n:functionalTest=500\n", UTF_8);
+
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.getTestTasksOrder().set(TestTasksOrder.LONGEST_FIRST);
+            testSourceSets.create("integrationTest");
+            testSourceSets.create("functionalTest");
+            executeAfterEvaluateActions(project);
+
+            var testTask = project.getTasks().getByName("test");
+            assertThat(testTask.getShouldRunAfter().getDependencies(testTask))
+                .extracting(Task::getName)
+                .containsExactly("functionalTest");
+
+            var functionalTestTask = project.getTasks().getByName("functionalTest");
+            assertThat(functionalTestTask.getShouldRunAfter().getDependencies(functionalTestTask))
+                .extracting(Task::getName)
+                .containsExactly("integrationTest");
+        }
+
+    }
+
+
     @Nested
     class IfJacocoPluginIsApplied {
 
@@ -350,6 +650,90 @@ class TestSourceSetsPluginTest {
             assertNotNull(project.getTasks().findByName("jacocoIntegrationTestCoverageVerification"));
         }
 
+        @Test
+        void allTestsReportTaskUsesExecutionDataOfAllTestTasks() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.create("integrationTest");
+
+            var allTestsReportTask = project.getTasks().withType(JacocoReport.class)
+                .getByName("jacocoAllTestsReport");
+            var allTestsVerificationTask = project.getTasks().withType(JacocoCoverageVerification.class)
+                .getByName("jacocoAllTestsCoverageVerification");
+            var testTasks = project.getTasks().withType(org.gradle.api.tasks.testing.Test.class);
+            for (var testTaskName : List.of("test", "integrationTest")) {
+                var testTaskJacoco = getExtension(testTasks.getByName(testTaskName), JacocoTaskExtension.class);
+                assertThat(allTestsReportTask.getExecutionData().getFiles())
+                    .contains(testTaskJacoco.getDestinationFile());
+                assertThat(allTestsVerificationTask.getExecutionData().getFiles())
+                    .contains(testTaskJacoco.getDestinationFile());
+            }
+        }
+
+        @Test
+        void allTestsTaskIsFinalizedByAllTestsReportTask() {
+            var allTestsTask = project.getTasks().getByName("allTests");
+            assertThat(allTestsTask.getFinalizedBy().getDependencies(allTestsTask))
+                .extracting(Task::getName)
+                .containsExactly("jacocoAllTestsReport");
+        }
+
+        @Test
+        void reportTaskUsesExecutionDataOfTestTask() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.create("integrationTest");
+
+            var reportTask = project.getTasks().withType(JacocoReport.class).getByName("jacocoIntegrationTestReport");
+            var testTask = project.getTasks().withType(org.gradle.api.tasks.testing.Test.class)
+                .getByName("integrationTest");
+            var testTaskJacoco = getExtension(testTask, JacocoTaskExtension.class);
+            assertThat(reportTask.getExecutionData().getFiles())
+                .containsExactly(testTaskJacoco.getDestinationFile());
+        }
+
+        @Test
+        void offlineInstrumentationIsDisabledByDefault() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.create("integrationTest");
+
+            var testTask = project.getTasks().withType(org.gradle.api.tasks.testing.Test.class)
+                .getByName("integrationTest");
+            assertTrue(getExtension(testTask, JacocoTaskExtension.class).isEnabled());
+            assertThat(taskDependencyNames(testSourceSets.getByName("integrationTest").getRuntimeClasspath()))
+                .doesNotContain("jacocoInstrumentMainClasses");
+        }
+
+        @Test
+        void offlineInstrumentation() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.getJacocoOfflineInstrumentation().set(true);
+            testSourceSets.create("integrationTest");
+
+            for (var testSourceSetName : List.of("test", "integrationTest")) {
+                var testSourceSet = testSourceSets.getByName(testSourceSetName);
+                assertThat(taskDependencyNames(testSourceSet.getRuntimeClasspath()))
+                    .contains("jacocoInstrumentMainClasses");
+
+                var testTask = project.getTasks().withType(org.gradle.api.tasks.testing.Test.class)
+                    .getByName(testSourceSetName);
+                assertFalse(getExtension(testTask, JacocoTaskExtension.class).isEnabled());
+                assertThat(testTask.getJvmArgumentProviders())
+                    .flatExtracting(CommandLineArgumentProvider::asArguments)
+                    .containsOnlyOnce("-Djacoco-agent.destfile="
+                        + getExtension(testTask, JacocoTaskExtension.class).getDestinationFile().getAbsolutePath()
+                    );
+            }
+
+            var instrumentTask = project.getTasks().getByName("jacocoInstrumentMainClasses");
+            TaskValidations.markTaskDependenciesAsSkipped(instrumentTask);
+            TaskValidations.assertNoTaskPropertiesProblems(instrumentTask);
+        }
+
+        private List<String> taskDependencyNames(FileCollection files) {
+            return files.getBuildDependencies().getDependencies(null).stream()
+                .map(Task::getName)
+                .collect(toList());
+        }
+
     }
 
 
@@ -371,6 +755,30 @@ class TestSourceSetsPluginTest {
                 .contains(testSourceSets.getByName("test"), testSourceSets.getByName("integrationTest"));
         }
 
+        @Test
+        void sharedTestKitIsDisabledByDefault() {
+            var testTask = project.getTasks().withType(org.gradle.api.tasks.testing.Test.class).getByName("test");
+            assertThat(testTask.getJvmArgumentProviders())
+                .flatExtracting(CommandLineArgumentProvider::asArguments)
+                .noneMatch(arg -> arg.startsWith("-Dorg.gradle.testkit.dir="));
+        }
+
+        @Test
+        void sharedTestKit() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.getSharedTestKit().set(true);
+            testSourceSets.create("functionalTest");
+
+            var testKitDir = new File(project.getRootDir(), ".gradle/test-kit");
+            for (var testTaskName : List.of("test", "functionalTest")) {
+                var testTask = project.getTasks().withType(org.gradle.api.tasks.testing.Test.class)
+                    .getByName(testTaskName);
+                assertThat(testTask.getJvmArgumentProviders())
+                    .flatExtracting(CommandLineArgumentProvider::asArguments)
+                    .containsOnlyOnce("-Dorg.gradle.testkit.dir=" + testKitDir.getAbsolutePath());
+            }
+        }
+
     }
 
 
@@ -464,6 +872,30 @@ class TestSourceSetsPluginTest {
             assertTrue(testPlusScope.contains(runtimeClasspathConfiguration));
         }
 
+        @Test
+        void classpathConfigurationsAreAddedToIdeaModuleScopeOnce() {
+            var testSourceSets = getExtension(project, TestSourceSetContainer.class);
+            testSourceSets.create("anotherTest");
+            testSourceSets.create("oneMoreTest");
+
+            var idea = getExtension(project, IdeaModel.class);
+            var module = idea.getModule();
+            assertNotNull(module, "idea.module");
+            var scopes = module.getScopes();
+            assertNotNull(scopes, "idea.module.scopes");
+            var testScope = scopes.get("TEST");
+            assertNotNull(testScope, "idea.module.scopes.TEST");
+            var testPlusScope = testScope.get("plus");
+            assertNotNull(testPlusScope, "idea.module.scopes.TEST.plus");
+            assertThat(testPlusScope).doesNotHaveDuplicates();
+            for (var testSourceSet : testSourceSets) {
+                assertThat(testPlusScope).contains(
+                    project.getConfigurations().getByName(testSourceSet.getCompileClasspathConfigurationName()),
+                    project.getConfigurations().getByName(testSourceSet.getRuntimeClasspathConfigurationName())
+                );
+            }
+        }
+
         @Test
         void ideaModuleTestSourceDirsContainsDirsOfAllTestSourceSets() {
             var testSourceSets = getExtension(project, TestSourceSetContainer.class);